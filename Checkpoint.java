@@ -0,0 +1,300 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+/**
+ * This class saves the state of a simulation at the end of a day, so that a
+ * long simulation can be resumed from that day instead of starting over.
+ *
+ * A checkpoint holds:
+ *      the types of crops, the number of tiles, the gold buckets and the seed blocks the simulation was run with
+ *      the days remaining before the end of the season
+ *      the farms carried over to the next day, along with their histories
+ *      the best known strategy and the farms discarded by the beam so far
+ *      the farms merged into gold buckets so far
+ *
+ * The memoization cache of permutations is not saved, as it grows far larger than
+ * the farms and would be rewritten in full every day. Permutations are kept across
+ * runs by a PermutationStore instead, which only appends the permutations that are new.
+ *
+ * The layout is a simple sequence of binary values, written and read in a single
+ * pass. It begins with a version number, which is raised whenever the layout changes:
+ *
+ *      int magic, int version
+ *      int number of crop types, then for every crop type: utf name, int buy price
+ *      int waterable tiles, int gold bucket size, double gold bucket ratio, int seed block size
+ *      int days remaining
+ *      int best lower bound, long discarded farms, double best discarded bound
+ *      long merged farms, long thinned farms, double best merged bound
+ *      int histories, then for every history: int previous (-1 for none), int days remaining,
+ *          int starting gold, int ending gold, int ending gold cache, seeds
+ *      int farms, then for every farm: int gold, int gold cache, int history, crops
+ *
+ * Seeds and crops are written as the number of filled slots followed by a short
+ * slot and an int number for every filled slot. Seeds that were never bought are
+ * written as -1 filled slots.
+ */
+public class Checkpoint
+{
+    private static final int MAGIC = 0x53564343; //"SVCC"
+    private static final int VERSION = 6;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final SimulationContext context;
+    private final ArrayList<Farm> farms;
+    private final long numDiscardedFarms;
+    private final double bestDiscardedBound;
+    private final long numMergedFarms;
+    private final long numThinnedFarms;
+    private final double bestMergedBound;
+
+    private Checkpoint(SimulationContext context, ArrayList<Farm> farms, long numDiscardedFarms, double bestDiscardedBound,
+                       long numMergedFarms, long numThinnedFarms, double bestMergedBound)
+    {
+        this.context = context;
+        this.farms = farms;
+        this.numDiscardedFarms = numDiscardedFarms;
+        this.bestDiscardedBound = bestDiscardedBound;
+        this.numMergedFarms = numMergedFarms;
+        this.numThinnedFarms = numThinnedFarms;
+        this.bestMergedBound = bestMergedBound;
+    }
+
+    /**
+     * Saves the simulation at the end of a day.
+     *
+     * The checkpoint is written next to the given file first and then moved over
+     * it, so a crash while writing never leaves behind a partial checkpoint.
+     *
+     * @param file The file to save the checkpoint to
+     * @param context The simulation, already updated for the next day
+     * @param farms The farms carried over to the next day
+     * @param beam The beam that limited the farms so far
+     */
+    public static void write(Path file, SimulationContext context, ArrayList<Farm> farms, FarmBeam beam) throws IOException
+    {
+        Path partialFile = file.resolveSibling(file.getFileName() + ".partial");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(partialFile), BUFFER_SIZE)))
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            out.writeInt(context.getNumCropTypes());
+            for (int i = 0; i < context.getNumCropTypes(); i++)
+            {
+                out.writeUTF(context.getCropType(i).getName());
+                out.writeInt(context.getCropType(i).getBuyPrice());
+            }
+            out.writeInt(context.getEnergy().maxWaterableTiles());
+            out.writeInt(context.getBuckets().getBucketSize());
+            out.writeDouble(context.getBuckets().getBucketRatio());
+            out.writeInt(context.getBuckets().getSeedBlockSize());
+            out.writeInt(context.getDaysRemaining());
+
+            out.writeInt(context.getBound().getBestLowerBound());
+            out.writeLong(beam.getNumDiscardedFarms());
+            out.writeDouble(beam.getBestDiscardedBound());
+            out.writeLong(context.getBuckets().getNumMergedFarms());
+            out.writeLong(context.getBuckets().getNumThinnedFarms());
+            out.writeDouble(context.getBuckets().getBestMergedBound());
+
+            //number every history shared by the farms, the previous day of a history always coming first
+            IdentityHashMap<FarmHistory, Integer> historyIds = new IdentityHashMap<>();
+            ArrayList<FarmHistory> histories = new ArrayList<>();
+            ArrayDeque<FarmHistory> newHistories = new ArrayDeque<>();
+            for (Farm farm : farms)
+            {
+                for (FarmHistory day = farm.getHistory(); day != null && !historyIds.containsKey(day); day = day.getPrevious())
+                {
+                    newHistories.push(day);
+                }
+                while (!newHistories.isEmpty())
+                {
+                    FarmHistory day = newHistories.pop();
+                    historyIds.put(day, histories.size());
+                    histories.add(day);
+                }
+            }
+
+            out.writeInt(histories.size());
+            for (FarmHistory day : histories)
+            {
+                out.writeInt(day.getPrevious() == null ? -1 : historyIds.get(day.getPrevious()));
+                out.writeInt(day.getDaysRemaining());
+                out.writeInt(day.getStartingGold());
+                out.writeInt(day.getEndingGold());
+                out.writeInt(day.getEndingGoldCache());
+                writeCounts(out, day.getSeedsPurchased());
+            }
+
+            out.writeInt(farms.size());
+            for (Farm farm : farms)
+            {
+                out.writeInt(farm.getGold());
+                out.writeInt(farm.getGoldCache());
+                out.writeInt(farm.getHistory() == null ? -1 : historyIds.get(farm.getHistory()));
+                writeCounts(out, farm.getCrops());
+            }
+        }
+        Files.move(partialFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Loads a simulation saved at the end of a day.
+     *
+     * The farms merged so far depend on the gold buckets and seed blocks,
+     * so a checkpoint saved with different ones is not loaded.
+     *
+     * @param file The file the checkpoint was saved to
+     * @param crops The types of crops that can be planted this season, sorted by descending buy price
+     * @param energy The player's energy
+     * @param maxCachedPermutations The most permutations kept in the memoization cache, 0 for no limit
+     * @param bucketSize The gold in every bucket, 0 for no fixed buckets
+     * @param bucketRatio The fraction of the gold every bucket spans, 0 for no growing buckets
+     * @param seedBlockSize The number of seeds bought at once, 0 to buy any number of seeds
+     * @throws IOException If the checkpoint cannot be read, or was saved by a different simulation
+     */
+    public static Checkpoint read(Path file, ArrayList<Crop> crops, Energy energy, long maxCachedPermutations,
+                                  int bucketSize, double bucketRatio, int seedBlockSize) throws IOException
+    {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE)))
+        {
+            if (in.readInt() != MAGIC)
+            {
+                throw new IOException(file + " is not a checkpoint");
+            }
+            int version = in.readInt();
+            if (version != VERSION)
+            {
+                throw new IOException(file + " is a version " + version + " checkpoint, only version " + VERSION + " is supported");
+            }
+
+            int numCropTypes = in.readInt();
+            boolean sameCrops = numCropTypes == crops.size();
+            for (int i = 0; i < numCropTypes; i++)
+            {
+                String name = in.readUTF();
+                int buyPrice = in.readInt();
+                sameCrops = sameCrops && crops.get(i).getName().equals(name) && crops.get(i).getBuyPrice() == buyPrice;
+            }
+            if (!sameCrops || in.readInt() != energy.maxWaterableTiles())
+            {
+                throw new IOException(file + " was saved by a simulation with different crops or energy");
+            }
+            if (in.readInt() != bucketSize || in.readDouble() != bucketRatio || in.readInt() != seedBlockSize)
+            {
+                throw new IOException(file + " was saved by a simulation with different gold buckets or seed blocks");
+            }
+
+            //the context subtracts a day when it is created
+            int daysRemaining = in.readInt();
+            SimulationContext context = new SimulationContext(crops, daysRemaining + 1, energy, maxCachedPermutations);
+            context.getBound().raiseLowerBound(in.readInt());
+            long numDiscardedFarms = in.readLong();
+            double bestDiscardedBound = in.readDouble();
+            long numMergedFarms = in.readLong();
+            long numThinnedFarms = in.readLong();
+            double bestMergedBound = in.readDouble();
+
+            FarmHistory[] histories = new FarmHistory[in.readInt()];
+            for (int i = 0; i < histories.length; i++)
+            {
+                int previous = in.readInt();
+                histories[i] = new FarmHistory(previous == -1 ? null : histories[previous],
+                                               in.readInt(),
+                                               in.readInt(),
+                                               in.readInt(),
+                                               in.readInt(),
+                                               readCounts(in, context.getNumCropTypes()));
+            }
+
+            int numFarms = in.readInt();
+            ArrayList<Farm> farms = new ArrayList<>(numFarms);
+            for (int i = 0; i < numFarms; i++)
+            {
+                int gold = in.readInt();
+                int goldCache = in.readInt();
+                int history = in.readInt();
+                int[] farmCrops = readCounts(in, context.getNumSlots());
+                farms.add(new Farm(context, farmCrops, gold, goldCache, history == -1 ? null : histories[history]));
+            }
+
+            return new Checkpoint(context, farms, numDiscardedFarms, bestDiscardedBound,
+                                  numMergedFarms, numThinnedFarms, bestMergedBound);
+        }
+    }
+
+    //writes only the filled slots of the given counts, or -1 if there are no counts
+    private static void writeCounts(DataOutputStream out, int[] counts) throws IOException
+    {
+        if (counts == null)
+        {
+            out.writeShort(-1);
+            return;
+        }
+
+        int numFilledSlots = 0;
+        for (int count : counts)
+        {
+            if (count > 0)
+            {
+                numFilledSlots++;
+            }
+        }
+
+        out.writeShort(numFilledSlots);
+        for (int i = 0; i < counts.length; i++)
+        {
+            if (counts[i] > 0)
+            {
+                out.writeShort(i);
+                out.writeInt(counts[i]);
+            }
+        }
+    }
+
+    //reads counts written by writeCounts()
+    private static int[] readCounts(DataInputStream in, int length) throws IOException
+    {
+        int numFilledSlots = in.readShort();
+        if (numFilledSlots == -1)
+        {
+            return null;
+        }
+
+        int[] counts = new int[length];
+        for (int i = 0; i < numFilledSlots; i++)
+        {
+            int slot = in.readShort();
+            counts[slot] = in.readInt();
+        }
+        return counts;
+    }
+
+    //returns the simulation, already updated for the day after the checkpoint
+    public SimulationContext getContext()
+    {
+        return context;
+    }
+
+    //returns the farms carried over to the day after the checkpoint
+    public ArrayList<Farm> getFarms()
+    {
+        return farms;
+    }
+
+    //restores the farms the beam discarded and the farms merged into gold buckets before the checkpoint
+    public void restore(FarmBeam beam)
+    {
+        beam.restore(numDiscardedFarms, bestDiscardedBound);
+        context.getBuckets().restore(numMergedFarms, numThinnedFarms, bestMergedBound);
+    }
+}
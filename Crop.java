@@ -7,8 +7,17 @@ public class Crop implements Comparable<Crop>
     protected final int regrowthTime;
     private final int numHarvested; //the number of times this crop can be harvested at harvest time
     protected final int chanceForMore; //the chance for more of this crop to be harvested at harvest time (% chance)
+    private final int harvestPrice; //the gold a single harvest of this crop is expected to sell for, including its quality
+    private final Fertilizer fertilizer; //the fertilizer placed with every seed of this crop when it is planted, included in its buy price
 
     public Crop(String name, int buyPrice, int sellPrice, int growthTime, int regrowthTime, int numHarvested, int chanceForMore)
+    {
+        this(name, buyPrice, sellPrice, growthTime, regrowthTime, numHarvested, chanceForMore, sellPrice*numHarvested,
+             Fertilizer.NONE);
+    }
+
+    private Crop(String name, int buyPrice, int sellPrice, int growthTime, int regrowthTime, int numHarvested, int chanceForMore,
+                 int harvestPrice, Fertilizer fertilizer)
     {
         this.name = name;
         this.buyPrice = buyPrice;
@@ -17,6 +26,65 @@ public class Crop implements Comparable<Crop>
         this.regrowthTime = regrowthTime;
         this.numHarvested = numHarvested;
         this.chanceForMore = chanceForMore;
+        this.harvestPrice = harvestPrice;
+        this.fertilizer = fertilizer;
+    }
+
+    //copies the given crop
+    protected Crop(Crop crop)
+    {
+        this(crop.name, crop.buyPrice, crop.sellPrice, crop.growthTime, crop.regrowthTime, crop.numHarvested,
+             crop.chanceForMore, crop.harvestPrice, crop.fertilizer);
+    }
+
+    /**
+     * Returns this crop as grown by a player with the given farming level, in
+     * soil with the given fertilizer.
+     *
+     * Only the first crop of every harvest can be of a higher quality, so it sells
+     * for its expected price and the rest of the harvest for the normal price. The
+     * fertilizer is bought along with every seed, and named along with the crop.
+     *
+     * @param farmingLevel The player's farming level, 0-10, plus up to 3 from food buffs
+     * @param fertilizer The fertilizer placed with every seed
+     * @throws IllegalArgumentException If the player cannot have the farming level
+     */
+    public Crop withQuality(int farmingLevel, Fertilizer fertilizer)
+    {
+        CropQuality.checkFarmingLevel(farmingLevel);
+        double expectedPrice = CropQuality.getExpectedPrice(sellPrice, farmingLevel, fertilizer) + sellPrice*(numHarvested - 1);
+        return new Crop(fertilizer == Fertilizer.NONE ? name : name + " with " + fertilizer.getName(),
+                        buyPrice + fertilizer.getBuyPrice(),
+                        sellPrice,
+                        growthTime,
+                        regrowthTime,
+                        numHarvested,
+                        chanceForMore,
+                        (int) Math.round(expectedPrice),
+                        fertilizer);
+    }
+
+    /**
+     * Returns this crop, grown by a player with the given farming level, with the
+     * fertilizer that makes the most gold over a single harvest once it is paid for.
+     * A fertilizer is only placed with the seeds if it pays for itself.
+     *
+     * @param farmingLevel The player's farming level, 0-10, plus up to 3 from food buffs
+     * @param fertilizers The fertilizers that may be placed with every seed
+     * @throws IllegalArgumentException If the player cannot have the farming level
+     */
+    public Crop withBestFertilizer(int farmingLevel, Fertilizer[] fertilizers)
+    {
+        Crop bestCrop = withQuality(farmingLevel, Fertilizer.NONE);
+        for (Fertilizer fertilizer : fertilizers)
+        {
+            Crop fertilizedCrop = withQuality(farmingLevel, fertilizer);
+            if (fertilizedCrop.harvestPrice - fertilizedCrop.buyPrice > bestCrop.harvestPrice - bestCrop.buyPrice)
+            {
+                bestCrop = fertilizedCrop;
+            }
+        }
+        return bestCrop;
     }
 
     //sorts crops into descending order of buy price
@@ -42,9 +110,22 @@ public class Crop implements Comparable<Crop>
         return this.sellPrice;
     }
 
+    //returns the gold a single harvest of this crop is expected to sell for
     public int getSellPrice()
     {
-        return this.sellPrice*this.numHarvested;
+        return this.harvestPrice;
+    }
+
+    /**
+     * Returns the gold for harvesting & selling the given number of this crop.
+     *
+     * Every crop has a chanceForMore % chance of yielding extra crops at
+     * harvest time, so number*chanceForMore/100 extra crops are harvested
+     * on average (rounded down). Extra crops are always of normal quality.
+     */
+    public int getHarvestValue(int number)
+    {
+        return number*getSellPrice() + ((chanceForMore*number)/100)*sellPrice*numHarvested;
     }
 
     public int getGrowthTime()
@@ -71,4 +152,10 @@ public class Crop implements Comparable<Crop>
     {
         return this.name;
     }
+
+    //returns the fertilizer placed with every seed of this crop, NONE if there is none
+    public Fertilizer getFertilizer()
+    {
+        return this.fertilizer;
+    }
 }
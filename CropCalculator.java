@@ -1,6 +1,11 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 
 /**
  * This program calculates the most lucrative combination of planting crops in Stardew Valley.
@@ -28,7 +33,6 @@ import java.util.Collections;
 //TODO
 /**
  * take into account the following things as well:
- *      should take into account sprinklers, which increases the number of waterable squares depending on the sprinkler type
  *      it would be cool to tell the player that they have extra money stored up after a certain point.
  *          Like they've invested all they possibly can, and can now use the leftover money to
  *          purchase other things (e.g. tool upgrades, break open geos, etc.). This could be checked in permutate()
@@ -42,9 +46,8 @@ import java.util.Collections;
  *          Many others...
  *
  *      crop quality
- *          farming skill https://stardewcommunitywiki.com/Farming#Farming_Skill
- *          fertilized soil... that one's gonna suck to calculate
  *          food buff... not sure I will even bother with that one but we can
+ *          deluxe fertilizer, which is only sold for Qi gems
  *
  *      seeds that yield more seeds for free
  *          coffee beans
@@ -70,7 +73,7 @@ import java.util.Collections;
 public class CropCalculator
 {
     //seasons
-    private static enum SEASON
+    public static enum SEASON
     {
         SPRING,
         SUMMER,
@@ -80,6 +83,19 @@ public class CropCalculator
 
     //all crop types, listed by season
 
+    //SPRING                                               name              buyPrice       sellPrice     growthTime     regrowthTime     numHarvested     chanceForMore
+    private static final Crop BLUE_JAZZ = new Crop      ("Blue Jazz",           30,            50,            7,             0,                1,                0);
+    private static final Crop CAULIFLOWER = new Crop    ("Cauliflower",         80,            175,           12,            0,                1,                0);
+//  private static final Crop COFFEE_BEAN = new Crop    ("Coffee Bean",         2500,          15,            10,            2,                4,                0); //TODO only sold by the Travelling Cart, and yields more coffee beans when harvested
+    private static final Crop GARLIC = new Crop         ("Garlic",              40,            60,            4,             0,                1,                0); //only sold from the second year on
+    private static final Crop GREEN_BEAN = new Crop     ("Green Bean",          60,            40,            10,            3,                1,                0);
+    private static final Crop KALE = new Crop           ("Kale",                70,            110,           6,             0,                1,                0);
+    private static final Crop PARSNIP = new Crop        ("Parsnip",             20,            35,            4,             0,                1,                0);
+    private static final Crop POTATO = new Crop         ("Potato",              50,            80,            6,             0,                1,                20);
+//  private static final Crop RHUBARB = new Crop        ("Rhubarb",             100,           220,           13,            0,                1,                0); //TODO only sold at the Oasis
+//  private static final Crop STRAWBERRY = new Crop     ("Strawberry",          100,           120,           8,             4,                1,                2); //TODO only sold at the Egg Festival
+    private static final Crop TULIP = new Crop          ("Tulip",               20,            30,            6,             0,                1,                0);
+
     //SUMMER                                               name              buyPrice       sellPrice     growthTime     regrowthTime     numHarvested     chanceForMore
     private static final Crop TOMATO = new Crop         ("Tomato",              50,            60,            11,            4,                1,                5);
     private static final Crop PEPPER = new Crop         ("Pepper",              40,            40,            5,             3,                1,                3);
@@ -89,35 +105,377 @@ public class CropCalculator
     private static final Crop MELON = new Crop          ("Melon",               80,            250,           12,            0,                1,                0);
     private static final Crop POPPY = new Crop          ("Poppy",               100,           140,           7,             0,                1,                0);
     private static final Crop RADISH = new Crop         ("Radish",              40,            90,            6,             0,                1,                0);
-    private static final Crop RED_CABBAGE = new Crop    ("Red Cabbage",         100,           260,           9,             0,                1,                0);
+    private static final Crop RED_CABBAGE = new Crop    ("Red Cabbage",         100,           260,           9,             0,                1,                0); //only sold from the second year on
     private static final Crop STARFRUIT = new Crop      ("Starfruit",           400,           750,           13,            0,                1,                0);
     private static final Crop SUMMER_SPANGLE = new Crop ("Summer Spangle",      50,            90,            8,             0,                1,                0);
  // private static final Crop SUNFLOWER = new Crop      ("Sunflower",           200,           80,            8,             0,                1,                0); //TODO yields 0-2 sunflower seeds when harvested, same thing for coffee beans
     private static final Crop WHEAT = new Crop          ("Wheat",               10,            25,            4,             0,                1,                0);
-    private static final int DAYS_IN_A_SEASON = 28;
+
+    //FALL                                                 name              buyPrice       sellPrice     growthTime     regrowthTime     numHarvested     chanceForMore
+    private static final Crop AMARANTH = new Crop       ("Amaranth",            70,            150,           7,             0,                1,                0);
+    private static final Crop ARTICHOKE = new Crop      ("Artichoke",           30,            160,           8,             0,                1,                0); //only sold from the second year on
+//  private static final Crop BEET = new Crop           ("Beet",                20,            100,           6,             0,                1,                0); //TODO only sold at the Oasis
+    private static final Crop BOK_CHOY = new Crop       ("Bok Choy",            50,            80,            4,             0,                1,                0);
+    private static final Crop CRANBERRIES = new Crop    ("Cranberries",         240,           75,            7,             5,                2,                10);
+    private static final Crop EGGPLANT = new Crop       ("Eggplant",            20,            60,            5,             5,                1,                0);
+    private static final Crop FAIRY_ROSE = new Crop     ("Fairy Rose",          200,           290,           12,            0,                1,                0);
+    private static final Crop GRAPE = new Crop          ("Grape",               60,            80,            10,            3,                1,                0);
+    private static final Crop PUMPKIN = new Crop        ("Pumpkin",             100,           320,           13,            0,                1,                0);
+    private static final Crop YAM = new Crop            ("Yam",                 60,            160,           10,            0,                1,                0);
+    //corn, sunflowers and wheat also grow in the fall, but are planted again rather than carried over from the summer
+
+    public static final int DAYS_IN_A_SEASON = 28;
 
     //define which crops are available in each season
-    private static final Crop[] SPRING_CROPS = {};
-    private static final Crop[] SUMMER_CROPS = {TOMATO, PEPPER, BLUEBERRY, CORN, MELON, POPPY, RADISH, RED_CABBAGE, STARFRUIT, SUMMER_SPANGLE, WHEAT};
-    private static final Crop[] FALL_CROPS = {};
-    private static final Crop[] WINTER_CROPS = {};
+    private static final Crop[] SPRING_CROPS = {BLUE_JAZZ, CAULIFLOWER, GREEN_BEAN, KALE, PARSNIP, POTATO, TULIP};
+    private static final Crop[] SUMMER_CROPS = {TOMATO, PEPPER, BLUEBERRY, CORN, MELON, POPPY, RADISH, STARFRUIT, SUMMER_SPANGLE, WHEAT};
+    private static final Crop[] FALL_CROPS = {AMARANTH, BOK_CHOY, CORN, CRANBERRIES, EGGPLANT, FAIRY_ROSE, GRAPE, PUMPKIN, WHEAT, YAM};
+    private static final Crop[] SECOND_YEAR_SPRING_CROPS = {GARLIC}; //added to the spring crops from the second year on
+    private static final Crop[] SECOND_YEAR_SUMMER_CROPS = {RED_CABBAGE}; //added to the summer crops from the second year on
+    private static final Crop[] SECOND_YEAR_FALL_CROPS = {ARTICHOKE}; //added to the fall crops from the second year on
+    private static final Crop[] WINTER_CROPS = {}; //no seeds are sold in the winter
 
     public static void main(String[] args)
     {
         //editable variables
         final int day = 1; //1-28
         final SEASON season = SEASON.SUMMER;
+        final int year = 1; //some seeds are only sold from the second year on
         final int gold = 100; //note here that when gold increases beyond a reasonable level, algorithm runtime drastically increases,
                               //as there are many more combinations possible. However, once player energy is factored in, gold will
                               //have a cap number for increasing runtime (e.g. a value of gold over x no longer makes the program slower).
                               //Specifically, this cap = the most expensive crop * number of squares the player can water in a day
 
+        //removes farms that have the same crops as another farm but less gold. This greatly reduces the number of farms,
+        //but may remove the most profitable farm as farms must spend all of their gold on seeds when they can afford them
+        final boolean removeDominatedFarms = false;
+
+        //limits the number of farms carried over to the next day to the farms with the highest scores.
+        //This keeps memory and runtime in check for large amounts of gold, but may discard the most profitable farm
+        final int maxFrontierSize = 0; //0 for no limit
+        final int frontierMemoryBudget = 0; //in megabytes, 0 for no limit
+        final FarmBeam.Score beamScore = FarmBeam.EXPECTED_VALUE;
+
+        //only tries seed counts a bucket of gold apart, and merges farms worth nearly the same gold. This makes large amounts of
+        //gold feasible, but may miss the most profitable farm. How far off the result may be is reported at the end.
+        //Exact runs are limited by memory, as a farm with thousands of gold late in the season has millions of permutations.
+        //Starting summer with 100 gold, exact runs from day 5 on finish in under a second, while runs from day 4 or earlier
+        //outgrow a 3 GB heap before the end of the season
+        final int goldBucketSize = 0; //in gold, 0 for exact
+        final double goldBucketRatio = 0; //a fraction of the gold, such as 0.05 for buckets 5% wide, 0 for exact
+
+        //only tries numbers of seeds this many seeds apart, so that hundreds of tiles watered by sprinklers can be planned quickly.
+        //How far off the result may be is reported along with the gold buckets
+        final int seedBlockSize = 0; //0 for exact
+
+        //limits the number of permutations kept in the memoization cache, the least recently used are evicted first
+        final long maxCachedPermutations = 2000000; //0 for no limit
+
+        //keeps every permutation calculated in permutations.bin, so that later runs with the same crops and gold buckets start warm
+        final boolean storePermutations = false;
+
+        //writes the farms of a day to disk once there are more than this many, so that runs are limited by disk rather than memory.
+        //Ignores maxFrontierSize, frontierMemoryBudget, gold buckets, seed blocks, removeDominatedFarms and checkpoints
+        final int maxFarmsInMemory = 0; //0 to keep every farm in memory
+
+        //searches one farm at a time from the last day backwards, remembering the most gold every farm can end the season with.
+        //Memory is limited by the states remembered rather than by the farms of a day. Only the most profitable strategy is
+        //written to the report. Ignores maxFrontierSize, frontierMemoryBudget, gold buckets, seed blocks, removeDominatedFarms, maxFarmsInMemory
+        //and checkpoints
+        final boolean depthFirstSearch = false;
+        final long maxSolvedStates = 0; //0 for no limit
+
+        //saves the farms to checkpoint.bin at the end of every day, and resumes from it instead of starting over.
+        //The permutations are not saved with the farms, keep them across runs with storePermutations
+        final boolean saveCheckpoints = false;
+        final boolean resumeFromCheckpoint = false;
+
+        //the number of most profitable strategies written to the report
+        final int numStrategies = 100; //0 for every strategy
+
+        //the layout of the report every farm's strategy is written to (log.txt, log.csv or log.jsonl)
+        final FarmReport.Format reportFormat = FarmReport.Format.TEXT;
+
+        //records the frontier, cache, time and allocation of every day to metrics.csv or metrics.jsonl
+        final boolean recordMetrics = false;
+        final SolverMetrics.Format metricsFormat = SolverMetrics.Format.CSV;
+        final boolean streamMetrics = false; //write every day as soon as it ends instead of at the end of the run
+
+        //the number of threads farms are simulated on
+        final int numThreads = Runtime.getRuntime().availableProcessors();
+
         //define the player's energy //TODO include these variables in the log as well!
         final int numStardropsEaten = 0; //0-7
         final Level wateringCanLevel = Level.COPPER;
-        final int farmingProficiencyLevel = 0; //0-10
+        final int farmingProficiencyLevel = 0; //0-10, plus up to 3 from food buffs
         //TODO allow the user to specify maximum squares
 
+        //define the sprinklers placed on the farm
+        final int numBasicSprinklers = 0;
+        final int numQualitySprinklers = 0;
+        final int numIridiumSprinklers = 0;
+
+        //sells crops for the gold their quality is expected to add, based on the farming level and the fertilizer in the soil
+        final boolean cropQuality = false;
+        final Fertilizer[] fertilizers = {}; //the fertilizers every seed may be planted with, such as {Fertilizer.BASIC, Fertilizer.QUALITY}
+
+        ArrayList<Crop> crops = cropQuality ? getCrops(season, year, farmingProficiencyLevel, fertilizers) : getCrops(season, year);
+
+        //initialize classes and containing structures
+        Energy energy = new Energy(numStardropsEaten, wateringCanLevel, farmingProficiencyLevel)
+                            .withSprinklers(Sprinkler.BASIC, numBasicSprinklers)
+                            .withSprinklers(Sprinkler.QUALITY, numQualitySprinklers)
+                            .withSprinklers(Sprinkler.IRIDIUM, numIridiumSprinklers);
+        int daysRemaining = DAYS_IN_A_SEASON - day + 1; //plus one to ensure we have a FarmEvent log for the last day
+        Path checkpointFile = Paths.get("checkpoint.bin");
+        SimulationContext context;
+        ArrayList<Farm> startingFarms = new ArrayList<>();
+        Checkpoint checkpoint = null;
+        if (resumeFromCheckpoint && maxFarmsInMemory == 0 && !depthFirstSearch && Files.exists(checkpointFile))
+        {
+            try
+            {
+                checkpoint = Checkpoint.read(checkpointFile, crops, energy, maxCachedPermutations,
+                                             goldBucketSize, goldBucketRatio, seedBlockSize);
+            }
+            catch (IOException e)
+            {
+                System.out.println("Error, Unable to resume from the checkpoint...");
+                e.printStackTrace();
+                return;
+            }
+            context = checkpoint.getContext();
+            startingFarms = checkpoint.getFarms();
+            System.out.println("Resuming from day " + (DAYS_IN_A_SEASON - context.getDaysRemaining()) +
+                               " with " + startingFarms.size() + " farms");
+        }
+        else
+        {
+            context = new SimulationContext(crops, daysRemaining, energy, maxCachedPermutations);
+            startingFarms.add(new Farm(context, null, gold, 0, null));
+        }
+
+        if (maxFarmsInMemory == 0 && !depthFirstSearch)
+        {
+            context.setGoldBuckets(goldBucketSize, goldBucketRatio, seedBlockSize);
+        }
+        if (storePermutations)
+        {
+            try
+            {
+                context.setPermutationStore(PermutationStore.open(Paths.get("permutations.bin"), context));
+                System.out.println("Loaded " + context.getPermutationStore().size() + " stored permutations");
+            }
+            catch (IOException e)
+            {
+                System.out.println("Error, Unable to open the stored permutations...");
+                e.printStackTrace();
+            }
+        }
+        FarmBeam beam = new FarmBeam(context, maxFrontierSize, frontierMemoryBudget, beamScore);
+        if (checkpoint != null)
+        {
+            checkpoint.restore(beam);
+        }
+        FarmExpansion expansion = new FarmExpansion(numThreads);
+        FarmRanking ranking = new FarmRanking(numStrategies);
+
+        SolverMetrics metrics = null;
+        if (recordMetrics)
+        {
+            try
+            {
+                metrics = new SolverMetrics(context, SolverMetrics.getFileName(metricsFormat), metricsFormat, streamMetrics);
+            }
+            catch (IOException e)
+            {
+                System.out.println("Error, Unable to create or write to metrics file...");
+                e.printStackTrace();
+            }
+        }
+        double startTime = System.nanoTime();
+
+        ArrayList<Farm> farms;
+        if (depthFirstSearch)
+        {
+            FarmSolver solver = new FarmSolver(context, maxSolvedStates);
+            farms = new ArrayList<>();
+            farms.add(solver.solve(gold));
+            System.out.println("Solved states: " + solver.getNumStates() + ", transposition table hits: " + solver.getNumHits());
+        }
+        else if (maxFarmsInMemory > 0)
+        {
+            try
+            {
+                farms = simulateExternally(context, gold, expansion, maxFarmsInMemory, ranking, metrics);
+            }
+            catch (IOException e)
+            {
+                System.out.println("Error, Unable to write the farms to disk...");
+                e.printStackTrace();
+                expansion.shutdown();
+                return;
+            }
+        }
+        else
+        {
+            farms = simulate(context, startingFarms, expansion, beam, removeDominatedFarms, ranking, metrics,
+                             saveCheckpoints ? checkpointFile : null);
+        }
+
+        double endTime = System.nanoTime() - startTime;
+        expansion.shutdown();
+
+        if (metrics != null)
+        {
+            try
+            {
+                metrics.close();
+            }
+            catch (IOException e)
+            {
+                System.out.println("Error, Unable to create or write to metrics file...");
+                e.printStackTrace();
+            }
+        }
+
+        PermutationCache cache = context.getPermutationCache();
+        System.out.println("Permutation cache: " + cache.getHits() + " hits, " + cache.getMisses() + " misses, " +
+                           cache.getEvictions() + " evictions");
+        PermutationStore store = context.getPermutationStore();
+        if (store != null)
+        {
+            System.out.println("Stored permutations: " + store.getHits() + " hits, " + store.getNumAppended() + " appended");
+            try
+            {
+                store.close();
+            }
+            catch (IOException e)
+            {
+                System.out.println("Error, Unable to write to the stored permutations...");
+                e.printStackTrace();
+            }
+        }
+        System.out.println("Total number of farm permutations: " + ranking.getNumFarms());
+        if (farms.isEmpty())
+        {
+            System.out.println("Error, No farm reached the end of the season...");
+            return;
+        }
+        System.out.println("For day " + day + " of " + season + " starting with " + gold + " gold " +
+                           "and a maximum of " + energy.maxWaterableTiles() + " waterable tiles a day, " +
+                           "the most profitable strategy you can pursue is:");
+
+        int bestGold = farms.get(0).getGold();
+        if (beam.getNumDiscardedFarms() > 0)
+        {
+            System.out.println("Discarded " + beam.getNumDiscardedFarms() + " farms to keep at most " +
+                               beam.getMaxFarms() + " farms a day. The discarded farms could have ended the season " +
+                               "with at most " + (int) beam.getGap(bestGold) + " more gold than the strategy below.");
+
+            if (context.getBound().getBestLowerBound() > bestGold)
+            {
+                System.out.println("A strategy ending the season with " + context.getBound().getBestLowerBound() +
+                                   " gold was found but discarded. Increase the frontier size to find it.");
+            }
+        }
+        FarmBuckets buckets = context.getBuckets();
+        if (buckets.getNumMergedFarms() > 0 || buckets.getNumThinnedFarms() > 0)
+        {
+            System.out.println("Merged " + buckets.getNumMergedFarms() + " farms worth nearly the same gold and skipped " +
+                               "seeds for " + buckets.getNumThinnedFarms() + " farms. The merged and skipped farms could have " +
+                               "ended the season with at most " + (int) buckets.getGap(bestGold) + " more gold than the " +
+                               "strategy below.");
+
+            if (context.getBound().getBestLowerBound() > bestGold)
+            {
+                System.out.println("A strategy ending the season with " + context.getBound().getBestLowerBound() +
+                                   " gold was found but merged. Use smaller gold buckets or seed blocks to find it.");
+            }
+        }
+        try
+        {
+            FarmReport report = new FarmReport(FarmReport.getFileName(reportFormat), reportFormat);
+            for (int i = 0; i < farms.size(); i++)
+            {
+                if (i%10 == 0) System.out.println(i);
+                report.write(farms.get(i));
+            }
+            report.close();
+        }
+        catch (IOException | InterruptedException e)
+        {
+            System.out.println("Error, Unable to create or write to log file...");
+            e.printStackTrace();
+        }
+
+        System.out.println("Time: " + endTime/1000000000 + " seconds");
+    }
+
+    /**
+     * Returns the types of crops that can be planted in the given season, taking
+     * their quality into account, sorted in descending order of buy price.
+     *
+     * The fertilizer is a modifier of every planting rather than a type of crop of
+     * its own, so the number of types of crops stays the same: every crop is planted
+     * with the fertilizer that makes the most gold for it, see Crop.withBestFertilizer().
+     *
+     * @param season The season
+     * @param year The year, starting from 1
+     * @param farmingLevel The player's farming level, 0-10, plus up to 3 from food buffs
+     * @param fertilizers The fertilizers every seed may be planted with
+     * @throws IllegalArgumentException If the player cannot have the farming level
+     */
+    public static ArrayList<Crop> getCrops(SEASON season, int year, int farmingLevel, Fertilizer[] fertilizers)
+    {
+        ArrayList<Crop> crops = new ArrayList<>();
+        for (Crop crop : getCrops(season, year))
+        {
+            crops.add(crop.withBestFertilizer(farmingLevel, fertilizers));
+        }
+
+        Collections.sort(crops);
+        return crops;
+    }
+
+    /**
+     * Returns the types of crops that can be planted in the given season of the
+     * given year, sorted in descending order of buy price (most expensive crops first).
+     *
+     * @param season The season
+     * @param year The year, starting from 1
+     */
+    public static ArrayList<Crop> getCrops(SEASON season, int year)
+    {
+        ArrayList<Crop> crops = getCrops(season);
+        if (year >= 2)
+        {
+            switch (season)
+            {
+                case SPRING:
+                    crops.addAll(Arrays.asList(SECOND_YEAR_SPRING_CROPS));
+                    break;
+                case SUMMER:
+                    crops.addAll(Arrays.asList(SECOND_YEAR_SUMMER_CROPS));
+                    break;
+                case FALL:
+                    crops.addAll(Arrays.asList(SECOND_YEAR_FALL_CROPS));
+                    break;
+                case WINTER:
+                default:
+                    break;
+            }
+            Collections.sort(crops);
+        }
+        return crops;
+    }
+
+    /**
+     * Returns the types of crops that can be planted in the given season of the
+     * first year, sorted in descending order of buy price (most expensive crops first).
+     */
+    public static ArrayList<Crop> getCrops(SEASON season)
+    {
         ArrayList<Crop> crops;
         switch (season)
         {
@@ -136,54 +494,267 @@ public class CropCalculator
                 break;
         }
 
-        //sort the crops in descending order of buy price (most expensive crops first)
         Collections.sort(crops);
+        return crops;
+    }
 
-        //initialize classes and containing structures
-        Energy.initialize(numStardropsEaten, wateringCanLevel, farmingProficiencyLevel);
-        int daysRemaining = DAYS_IN_A_SEASON - day + 1; //plus one to ensure we have a FarmEvent log for the last day
-        int leastExpensiveCropValue = crops.get(crops.size()-1).getBuyPrice();
-        Farm.initialize(crops, daysRemaining, leastExpensiveCropValue);
-        Farm startingFarm = new Farm(null, gold, 0, null);
+    /**
+     * Simulates every possible permutation of farms until the end of the season.
+     *
+     * This is a breadth-first search.
+     *
+     * @param context The simulation, on its first day
+     * @param gold The gold the player starts with
+     * @param expansion Simulates a day for every farm
+     * @param beam Limits the number of farms carried over to the next day
+     * @param removeDominatedFarms Whether to remove farms that have the same crops as another farm but less gold
+     * @param ranking Collects the most profitable farms on the last day
+     * @param metrics Records what happened on every day, or null to not record it
+     * @return The most profitable farms at the end of the season, from the best to the worst
+     */
+    public static ArrayList<Farm> simulate(SimulationContext context,
+                                           int gold,
+                                           FarmExpansion expansion,
+                                           FarmBeam beam,
+                                           boolean removeDominatedFarms,
+                                           FarmRanking ranking,
+                                           SolverMetrics metrics)
+    {
+        Farm startingFarm = new Farm(context, null, gold, 0, null);
         ArrayList<Farm> farms = new ArrayList<>();
         farms.add(startingFarm);
-        double startTime = System.nanoTime();
 
-        //simulate every possible permutation of farms
-        //this is a breadth-first search
-        for (int i = 0; i < daysRemaining; i++)
+        return simulate(context, farms, expansion, beam, removeDominatedFarms, ranking, metrics, null);
+    }
+
+    /**
+     * Simulates every permutation of the given farms until the end of the season.
+     *
+     * @param context The simulation, on the day the farms begin
+     * @param farms The farms at the beginning of the day
+     * @param expansion Simulates a day for every farm
+     * @param beam Limits the number of farms carried over to the next day
+     * @param removeDominatedFarms Whether to remove farms that have the same crops as another farm but less gold
+     * @param ranking Collects the most profitable farms on the last day
+     * @param metrics Records what happened on every day, or null to not record it
+     * @param checkpointFile Where the simulation is saved at the end of every day, or null to not save it
+     * @return The most profitable farms at the end of the season, from the best to the worst
+     */
+    public static ArrayList<Farm> simulate(SimulationContext context,
+                                           ArrayList<Farm> farms,
+                                           FarmExpansion expansion,
+                                           FarmBeam beam,
+                                           boolean removeDominatedFarms,
+                                           FarmRanking ranking,
+                                           SolverMetrics metrics,
+                                           Path checkpointFile)
+    {
+        while (context.getDaysRemaining() >= 0)
         {
-            System.out.println("Day " + (day + i));
+            int day = DAYS_IN_A_SEASON - context.getDaysRemaining();
+            System.out.println("Day " + day);
+            if (metrics != null)
+            {
+                metrics.beginDay(day, farms.size());
+            }
+
+            //the farms finishing the last day are only ranked, never gathered
+            if (context.getDaysRemaining() == 0)
+            {
+                expansion.simulateLastDay(farms, ranking);
+                System.out.println("Permutations: " + ranking.getNumFarms());
+                if (metrics != null)
+                {
+                    metrics.endExpansion(ranking.getNumFarms());
+                    metrics.endDay(ranking.getFarms().size());
+                }
+                break;
+            }
+
+            //farms may already be merged into gold buckets as they are created, so count the permutations before merging
+            ArrayList<Farm> newFarms = expansion.simulateDay(farms);
+            long numPermutations = expansion.getNumPermutations();
+            System.out.println("Permutations: " + numPermutations);
+            if (metrics != null)
+            {
+                metrics.endExpansion(numPermutations);
+            }
+
+            //merge farms that reached the same gold and crops by different paths,
+            //as they will have the exact same future. The first farm found is kept.
+            //Few farms are merged, as every farm spends its gold whenever it can
+            newFarms = new ArrayList<>(new LinkedHashSet<>(newFarms));
 
-            ArrayList<Farm> newFarms = new ArrayList<>();
-            for (Farm farm : farms)
+            //merge farms worth nearly the same gold, if an approximate result is good enough
+            newFarms = context.getBuckets().merge(newFarms, context.getDaysRemaining());
+            System.out.println("Merged: " + (numPermutations - newFarms.size()));
+            if (metrics != null)
+            {
+                metrics.endMerge(numPermutations - newFarms.size());
+            }
+
+            //remove farms that cannot end the season with more gold than the best farm found so far
+            int numMergedFarms = newFarms.size();
+            if (removeDominatedFarms)
+            {
+                newFarms = FarmBound.removeDominated(newFarms);
+            }
+            newFarms = context.getBound().prune(newFarms, context.getDaysRemaining());
+            System.out.println("Pruned: " + (numMergedFarms - newFarms.size()) +
+                               " (guaranteed gold: " + context.getBound().getBestLowerBound() + ")");
+            if (metrics != null)
+            {
+                metrics.endPrune(numMergedFarms - newFarms.size());
+            }
+
+            //keep only the best farms if there are too many
+            int numPrunedFarms = newFarms.size();
+            newFarms = beam.select(newFarms, context.getDaysRemaining());
+            if (newFarms.size() < numPrunedFarms)
+            {
+                System.out.println("Discarded: " + (numPrunedFarms - newFarms.size()));
+            }
+            if (metrics != null)
             {
-                newFarms.addAll(farm.simulateDay());
+                metrics.endSelection(numPrunedFarms - newFarms.size());
+                metrics.endDay(newFarms.size());
             }
-            System.out.println("Permutations: " + newFarms.size());
 
-            Farm.update();
+            context.update();
             farms.clear();
             farms = newFarms;
-            //TODO scan for duplicates
-            //TODO tree pruning here
+
+            if (checkpointFile != null)
+            {
+                try
+                {
+                    Checkpoint.write(checkpointFile, context, farms, beam);
+                }
+                catch (IOException e)
+                {
+                    System.out.println("Error, Unable to write the checkpoint...");
+                    e.printStackTrace();
+                }
+            }
         }
+        return ranking.getFarms();
+    }
 
-        double endTime = System.nanoTime() - startTime;
+    /**
+     * Simulates every possible permutation of farms until the end of the season,
+     * holding at most the given number of farms of a day in memory at once.
+     *
+     * The farms at the end of every day are spilled to run files on disk, see
+     * FarmRuns, and each day reads them back a batch at a time. The histories
+     * of the farms are written to disk as well, see HistoryFile, and only read
+     * back for the most profitable farms. Farms are not limited by a beam and
+     * dominated farms are not removed, as both exist to keep all farms in memory.
+     *
+     * @param context The simulation, on its first day
+     * @param gold The gold the player starts with
+     * @param expansion Simulates a day for every farm
+     * @param maxFarmsInMemory The most farms of a day held in memory before they are written to disk
+     * @param ranking Collects the most profitable farms on the last day
+     * @param metrics Records what happened on every day, or null to not record it
+     * @return The most profitable farms at the end of the season, from the best to the worst
+     * @throws IOException If the farms cannot be written to or read from disk
+     */
+    public static ArrayList<Farm> simulateExternally(SimulationContext context,
+                                                     int gold,
+                                                     FarmExpansion expansion,
+                                                     int maxFarmsInMemory,
+                                                     FarmRanking ranking,
+                                                     SolverMetrics metrics) throws IOException
+    {
+        Path directory = Files.createTempDirectory("farms");
+        HistoryFile histories = new HistoryFile(directory);
+        ArrayList<Farm> startingFarm = new ArrayList<>();
+        startingFarm.add(new Farm(context, null, gold, 0, null));
+        FarmRuns farms = FarmRuns.startingFarms(context, startingFarm, histories);
+        ArrayList<Farm> rankedFarms = new ArrayList<>();
+        try
+        {
+            int farmsPerBatch = maxFarmsInMemory;
+            while (context.getDaysRemaining() >= 0)
+            {
+                int day = DAYS_IN_A_SEASON - context.getDaysRemaining();
+                System.out.println("Day " + day);
+                if (metrics != null)
+                {
+                    metrics.beginDay(day, farms.getNumFarms());
+                }
 
-        System.out.println("Total number of farm permutations: " + farms.size());
-        System.out.println("For day " + day + " of " + season + " starting with " + gold + " gold " +
-                           "and a maximum of " + Energy.maxWaterableTiles() + " waterable tiles a day, " +
-                           "the most profitable strategy you can pursue is:");
+                //the farms finishing the last day are only ranked, never gathered
+                if (context.getDaysRemaining() == 0)
+                {
+                    long numFarmsRead = 0;
+                    for (ArrayList<Farm> batch = farms.read(farmsPerBatch); !batch.isEmpty(); batch = farms.read(farmsPerBatch))
+                    {
+                        expansion.simulateLastDay(batch, numFarmsRead, ranking);
+                        numFarmsRead += batch.size();
+                    }
+                    System.out.println("Permutations: " + ranking.getNumFarms());
+                    if (metrics != null)
+                    {
+                        metrics.endExpansion(ranking.getNumFarms());
+                        metrics.endDay(ranking.getFarms().size());
+                    }
+                    break;
+                }
 
-        //sort farms by gold value
-        Collections.sort(farms);
-        for (int i = 0; i < farms.size(); i++)
+                FarmRuns newFarms = new FarmRuns(context, context.getDaysRemaining(), maxFarmsInMemory, directory, histories);
+                long numPermutations = 0;
+                long numBucketed = 0; //the farms merged into gold buckets as they were created
+                for (ArrayList<Farm> batch = farms.read(farmsPerBatch); !batch.isEmpty(); batch = farms.read(farmsPerBatch))
+                {
+                    ArrayList<Farm> permutations = expansion.simulateDay(batch);
+                    numPermutations += expansion.getNumPermutations();
+                    numBucketed += expansion.getNumPermutations() - permutations.size();
+                    newFarms.add(permutations);
+
+                    //read as many farms as are expected to fill the memory with their permutations
+                    farmsPerBatch = (int) Math.max(1, (long) maxFarmsInMemory*batch.size()/Math.max(1, permutations.size()));
+                }
+                farms.close();
+                newFarms.seal();
+                farms = newFarms;
+
+                System.out.println("Permutations: " + numPermutations);
+                System.out.println("Merged: " + (numBucketed + farms.getNumMerged()));
+                System.out.println("Pruned: " + farms.getNumPruned() +
+                                   " (guaranteed gold: " + context.getBound().getBestLowerBound() + ")");
+                if (farms.isSpilled())
+                {
+                    System.out.println("Spilled to disk: " + farms.getNumFarms());
+                }
+                if (metrics != null)
+                {
+                    metrics.endExpansion(numPermutations);
+                    metrics.endMerge(numBucketed + farms.getNumMerged());
+                    metrics.endPrune(farms.getNumPruned());
+                    metrics.endSelection(0);
+                    metrics.endDay(farms.getNumFarms());
+                }
+
+                context.update();
+            }
+
+            //the ranked farms only hold the last days of their history, read back the rest
+            for (Farm farm : ranking.getFarms())
+            {
+                rankedFarms.add(new Farm(context,
+                                         farm.getCrops(),
+                                         farm.getGold(),
+                                         farm.getGoldCache(),
+                                         histories.restore(farm.getHistory(), context.getNumCropTypes())));
+            }
+        }
+        finally
         {
-            if (i%10 == 0) System.out.println(i);
-            farms.get(i).print();
+            farms.close();
+            histories.close();
+            Files.deleteIfExists(directory);
         }
-
-        System.out.println("Time: " + endTime/1000000000 + " seconds");
+        return rankedFarms;
     }
 }
@@ -1,10 +1,11 @@
 /**
- * This class keeps track of a growing crop's status, including:
- *      the number of days the crop has been growing
- *      whether the crop can be harvested
+ * This class describes a group of crops on the farm, including:
+ *      the number of crops in the group
+ *      the number of days the crops have been growing
+ *      whether the crops have been harvested at least once
  *
- * This class can represent multiple growing crops with the same
- * status.
+ * Farms store their crops as plain counts, so groups are only
+ * created for logging the crops of a day.
  */
 public class CropGroup extends Crop
 {
@@ -12,78 +13,12 @@ public class CropGroup extends Crop
     int age; //the number of days this plant has been alive
     boolean fullyGrown;
 
-    public CropGroup(Crop crop, int number)
+    public CropGroup(Crop crop, int number, int age, boolean fullyGrown)
     {
-        super(crop.getName(),
-              crop.getBuyPrice(),
-              crop.getIndividualSellPrice(),
-              crop.getGrowthTime(),
-              crop.getRegrowthTime(),
-              crop.getNumHarvested(),
-              crop.getChanceForMore());
+        super(crop);
         this.number = number;
-        age = 0;
-        fullyGrown = false;
-    }
-
-    //creates a deep copy of this crop group
-    @Override
-    public CropGroup clone()
-    {
-        CropGroup cropGroup = new CropGroup(this, this.number);
-        cropGroup.setAge(this.age);
-        cropGroup.setFullyGrown(this.fullyGrown);
-        return cropGroup;
-    }
-
-    //advances the crop to a new a day
-    public void advance()
-    {
-        age++;
-    }
-
-    //if this crop is ready to be harvested, returns the gold for harvesting & selling it
-    //resets the age to 0 after first harvest if this crop can be reharvested
-    //Takes the FarmEvent as a parameter to log the harvesting
-    public int harvest(FarmEvent event)
-    {
-        if (fullyGrown)
-        {
-            if (age == this.regrowthTime)
-            {
-                int gold = 0;
-                if (chanceForMore != 0)
-                {
-                    gold = (int) (Math.floor((chanceForMore*number)/100)+1)*getSellPrice();
-                }
-                else
-                {
-                    gold = number*getSellPrice();
-                }
-
-                age = 0;
-                event.addHarvestedCrops(this.clone(), gold);
-                return gold;
-            }
-        }
-        else if (age == this.growthTime)
-        {
-            int gold = 0;
-            if (chanceForMore != 0)
-            {
-                gold = (int) (Math.floor((chanceForMore*number)/100)+1)*getSellPrice();
-            }
-            else
-            {
-                gold = number*getSellPrice();
-            }
-
-            age = 0;
-            fullyGrown = true;
-            event.addHarvestedCrops(this.clone(), gold);
-            return gold;
-        }
-        return 0;
+        this.age = age;
+        this.fullyGrown = fullyGrown;
     }
 
     public int getNumber()
@@ -96,31 +31,8 @@ public class CropGroup extends Crop
         return this.age;
     }
 
-    private void setAge(int age)
-    {
-        this.age = age;
-    }
-
-    private void setFullyGrown(boolean fullyGrown)
+    public boolean isFullyGrown()
     {
-        this.fullyGrown = fullyGrown;
-    }
-
-    /**
-     * @param daysRemaining The days left before the end of the season
-     * @return  true if the crop can produce more before the end of the season, false otherwise
-     *              crops that have been harvested that cannot be regrown will return false
-     *              crops that will not be able to be harvested again before the end of the season will return false
-     */
-    public boolean canProduceMore(int daysRemaining)
-    {
-        if ((fullyGrown && !canRegrow()) ||
-           (!fullyGrown && daysRemaining < (this.growthTime - age)) ||
-           (fullyGrown && daysRemaining < (this.regrowthTime - age)))
-        {
-            return false;
-        }
-
-        return true;
+        return this.fullyGrown;
     }
 }
@@ -0,0 +1,88 @@
+/**
+ * A class for the quality of harvested crops, which raises the gold they sell for.
+ *
+ * The chance of every quality only depends on the player's farming level and the
+ * level of the fertilizer in the soil, so the chances are worked out once for every
+ * pair and kept in a table. A crop then sells for a single expected price per
+ * harvest, see Crop.withQuality(), and harvesting never has to look at quality.
+ *
+ * The chances follow the game: a single roll decides the quality, with
+ *      gold chance = 0.2*(farming level/10) + 0.2*fertilizer level*((farming level + 2)/12) + 0.01
+ *      silver chance = min(0.75, 2*gold chance)
+ *      iridium chance = gold chance/2, only with a fertilizer of level 3 or more,
+ *          which also makes every other crop at least silver
+ */
+public class CropQuality
+{
+    public static final int MAX_FARMING_LEVEL = 10;
+    public static final int MAX_FARMING_BUFF = 3; //the most levels food can add to the farming level
+    private static final int MAX_FERTILIZER_LEVEL = 3;
+    private static final double[] PRICE_MULTIPLIERS = {1, 1.25, 1.5, 2}; //the sell price of every quality, from normal to iridium
+    private static final double[][][] CHANCES = new double[MAX_FARMING_LEVEL + MAX_FARMING_BUFF + 1][MAX_FERTILIZER_LEVEL + 1][]; //the chance of every quality, by farming and fertilizer level
+
+    static
+    {
+        for (int farmingLevel = 0; farmingLevel <= MAX_FARMING_LEVEL + MAX_FARMING_BUFF; farmingLevel++)
+        {
+            for (int fertilizerLevel = 0; fertilizerLevel <= MAX_FERTILIZER_LEVEL; fertilizerLevel++)
+            {
+                double gold = 0.2*(farmingLevel/10.0) + 0.2*fertilizerLevel*((farmingLevel + 2)/12.0) + 0.01;
+                double silver = Math.min(0.75, 2*gold);
+
+                double[] chances = new double[PRICE_MULTIPLIERS.length];
+                chances[3] = fertilizerLevel >= 3 ? gold/2 : 0;
+                chances[2] = Math.min(1, gold) - chances[3];
+                chances[1] = fertilizerLevel >= 3 ? 1 - Math.min(1, gold) : Math.max(0, silver - gold);
+                chances[0] = 1 - chances[1] - chances[2] - chances[3];
+                CHANCES[farmingLevel][fertilizerLevel] = chances;
+            }
+        }
+    }
+
+    /**
+     * Checks that the player can have the given farming level.
+     *
+     * @param farmingLevel The player's farming level, 0-10, plus up to 3 from food buffs
+     * @throws IllegalArgumentException If the player cannot have the farming level
+     */
+    public static void checkFarmingLevel(int farmingLevel)
+    {
+        if (farmingLevel < 0 || farmingLevel > MAX_FARMING_LEVEL + MAX_FARMING_BUFF)
+        {
+            throw new IllegalArgumentException("the farming level must be from 0 to " + MAX_FARMING_LEVEL + ", plus up to " +
+                                               MAX_FARMING_BUFF + " from food buffs, but is " + farmingLevel);
+        }
+    }
+
+    /**
+     * Returns the chance of every quality, from normal to iridium.
+     *
+     * @param farmingLevel The player's farming level, 0-10, plus up to 3 from food buffs
+     * @param fertilizer The fertilizer in the soil
+     */
+    public static double[] getChances(int farmingLevel, Fertilizer fertilizer)
+    {
+        checkFarmingLevel(farmingLevel);
+        return CHANCES[farmingLevel][fertilizer.getLevel()].clone();
+    }
+
+    /**
+     * Returns the gold a single crop is expected to sell for, taking its quality into account.
+     * The game rounds the price of every quality down.
+     *
+     * @param sellPrice The sell price of a crop of normal quality
+     * @param farmingLevel The player's farming level, 0-10, plus up to 3 from food buffs
+     * @param fertilizer The fertilizer in the soil
+     */
+    public static double getExpectedPrice(int sellPrice, int farmingLevel, Fertilizer fertilizer)
+    {
+        checkFarmingLevel(farmingLevel);
+        double[] chances = CHANCES[farmingLevel][fertilizer.getLevel()];
+        double price = 0;
+        for (int i = 0; i < PRICE_MULTIPLIERS.length; i++)
+        {
+            price += chances[i]*Math.floor(sellPrice*PRICE_MULTIPLIERS[i]);
+        }
+        return price;
+    }
+}
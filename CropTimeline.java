@@ -0,0 +1,147 @@
+/**
+ * This class works out ahead of time when the crops on a farm will be harvested.
+ *
+ * When a crop is harvested only depends on the slot it is in at the end of a day
+ * and the days left before the end of the season: it is harvested once it grows
+ * to maturity, then every regrowthTime days after that if it can regrow. So the
+ * gold a single crop is expected to be sold for is laid out once for every slot
+ * and every day of the season in a flat array indexed by daysLeft*numSlots + slot,
+ * rather than stepping the crop through every remaining day.
+ */
+public class CropTimeline
+{
+    private final SimulationContext context;
+    private final int numSlots;
+    private final int shortestGrowthTime; //the fewest days any type of crop takes to grow
+    private final int[] nextHarvests; //the days until the crops in every slot are harvested next, 0 for slots that are always empty at the end of a day
+    private final int[] regrowthTimes; //the days between the harvests of the crops in every slot, 0 if they cannot regrow
+    private final double[] revenues; //the gold a single crop is expected to be sold for, indexed by days remaining and slot
+
+    /**
+     * Lays out the harvests of every slot for every day of the season.
+     *
+     * @param context The simulation, on its first day
+     */
+    public CropTimeline(SimulationContext context)
+    {
+        this.context = context;
+        this.numSlots = context.getNumSlots();
+        this.nextHarvests = new int[numSlots];
+        this.regrowthTimes = new int[numSlots];
+
+        int shortest = Integer.MAX_VALUE;
+        for (int i = 0; i < context.getNumCropTypes(); i++)
+        {
+            Crop crop = context.getCropType(i);
+            int growthTime = crop.getGrowthTime();
+            int growing = context.getOffset(i);
+            shortest = Math.min(shortest, growthTime);
+
+            for (int age = 0; age <= growthTime; age++)
+            {
+                nextHarvests[growing + age] = growthTime - age;
+                regrowthTimes[growing + age] = crop.getRegrowthTime();
+            }
+
+            if (crop.canRegrow())
+            {
+                int regrowing = growing + growthTime + 1;
+                for (int age = 0; age <= crop.getRegrowthTime(); age++)
+                {
+                    nextHarvests[regrowing + age] = crop.getRegrowthTime() - age;
+                    regrowthTimes[regrowing + age] = crop.getRegrowthTime();
+                }
+            }
+        }
+        this.shortestGrowthTime = shortest;
+
+        int daysLeft = context.getDaysRemaining();
+        revenues = new double[(daysLeft + 1)*numSlots];
+        for (int i = 0; i < context.getNumCropTypes(); i++)
+        {
+            Crop crop = context.getCropType(i);
+            double gold = crop.getSellPrice()*(1 + crop.getChanceForMore()/100.0);
+            int end = i + 1 < context.getNumCropTypes() ? context.getOffset(i + 1) : numSlots;
+            for (int slot = context.getOffset(i); slot < end; slot++)
+            {
+                for (int day = 0; day <= daysLeft; day++)
+                {
+                    //every harvest is added one at a time, so the revenue matches stepping through the days exactly
+                    for (int harvest = day - nextHarvests[slot]; nextHarvests[slot] > 0 && harvest >= 0; harvest -= regrowthTimes[slot])
+                    {
+                        revenues[day*numSlots + slot] += gold;
+                        if (regrowthTimes[slot] == 0)
+                        {
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    //returns the gold a single crop in the given slot at the end of a day with the given days left is expected to be sold for
+    public double getRevenue(int slot, int daysLeft)
+    {
+        return revenues[daysLeft*numSlots + slot];
+    }
+
+    //returns the fewest days any type of crop takes to grow, so no seed can be planted once fewer days are left
+    public int getShortestGrowthTime()
+    {
+        return shortestGrowthTime;
+    }
+
+    /**
+     * Returns the exact gold the given crops will be sold for if they are left
+     * to grow until the end of the season.
+     *
+     * Extra crops from the chance for more are rounded down for every harvest
+     * of a type of crop, so the crops of every type are first added up for
+     * every day they are harvested on, just as they are on a farm.
+     *
+     * @param crops The crops on a farm at the end of a day
+     * @param daysLeft The days left before the end of the season on that day
+     */
+    public int getHarvestGold(int[] crops, int daysLeft)
+    {
+        int gold = 0;
+        int[] harvested = new int[daysLeft]; //the crops of a single type harvested, indexed by days remaining
+        for (int i = 0; i < context.getNumCropTypes(); i++)
+        {
+            boolean anyHarvested = false;
+            int end = i + 1 < context.getNumCropTypes() ? context.getOffset(i + 1) : numSlots;
+            for (int slot = context.getOffset(i); slot < end; slot++)
+            {
+                if (crops[slot] == 0)
+                {
+                    continue;
+                }
+
+                for (int harvest = daysLeft - nextHarvests[slot]; nextHarvests[slot] > 0 && harvest >= 0; harvest -= regrowthTimes[slot])
+                {
+                    harvested[harvest] += crops[slot];
+                    anyHarvested = true;
+                    if (regrowthTimes[slot] == 0)
+                    {
+                        break;
+                    }
+                }
+            }
+
+            if (anyHarvested)
+            {
+                Crop crop = context.getCropType(i);
+                for (int day = 0; day < daysLeft; day++)
+                {
+                    if (harvested[day] > 0)
+                    {
+                        gold += crop.getHarvestValue(harvested[day]);
+                        harvested[day] = 0;
+                    }
+                }
+            }
+        }
+        return gold;
+    }
+}
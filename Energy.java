@@ -7,15 +7,22 @@ import java.util.Map;
  *      max player energy (stardrops eaten)
  *      watering can level
  *      farming proficiency level
- *
- * This class is a Singleton.
+ *      the sprinklers placed on the farm, which water tiles without any energy
  */
 public class Energy
 {
-    private static int maxWaterableTiles;
+    private final int maxWaterableTiles;
 
-    public static void initialize(int numStardropsEaten, Level wateringCanLevel, int farmingProficiencyLevel)
+    /**
+     * @param numStardropsEaten The number of stardrops the player has eaten
+     * @param wateringCanLevel The level of the player's watering can
+     * @param farmingProficiencyLevel The player's farming level, 0-10, plus up to 3 from food buffs
+     * @throws IllegalArgumentException If the player cannot have the farming level
+     */
+    public Energy(int numStardropsEaten, Level wateringCanLevel, int farmingProficiencyLevel)
     {
+        CropQuality.checkFarmingLevel(farmingProficiencyLevel);
+
         //set up temporary associations
         Map<Level, Double> wateringCanEnergyCosts = new HashMap<>();
         wateringCanEnergyCosts.put(Level.BASIC, 2 - (farmingProficiencyLevel*0.1)); //watering can level - proficiency
@@ -33,7 +40,7 @@ public class Energy
 
         //calculate max energy and max waterable tiles
         double maxEnergy = 270 + (numStardropsEaten*34) - 0.1; //-0.1 offset to ensure you have at least 1 energy remaining, so as to not exhaust yourself
-        maxWaterableTiles = (int)(Math.floor(maxEnergy/wateringCanEnergyCosts.get(wateringCanLevel))*numTilesWateredByLevel.get(wateringCanLevel)); //energy/cost = numActions. numActions * number of tiles watered per action gives max waterable tiles
+        int waterableTiles = (int)(Math.floor(maxEnergy/wateringCanEnergyCosts.get(wateringCanLevel))*numTilesWateredByLevel.get(wateringCanLevel)); //energy/cost = numActions. numActions * number of tiles watered per action gives max waterable tiles
         double remainingEnergy = maxEnergy % wateringCanEnergyCosts.get(wateringCanLevel);
 
         //if there is enough energy remaining to perform a lower-level watering action, use it
@@ -42,9 +49,16 @@ public class Energy
             if (remainingEnergy >= wateringCanEnergyCosts.get(Level.fromInt(i-1)))
             {
                 remainingEnergy -= wateringCanEnergyCosts.get(Level.fromInt(i-1));
-                maxWaterableTiles += numTilesWateredByLevel.get(Level.fromInt(i-1));
+                waterableTiles += numTilesWateredByLevel.get(Level.fromInt(i-1));
             }
         }
+        maxWaterableTiles = waterableTiles;
+    }
+
+    //for when the number of tiles the player can water a day is already known
+    public Energy(int maxWaterableTiles)
+    {
+        this.maxWaterableTiles = maxWaterableTiles;
     }
 
     /**
@@ -52,8 +66,21 @@ public class Energy
      * player can water in a single day while
      * staying above their energy limit.
      */
-    public static int maxWaterableTiles()
+    public int maxWaterableTiles()
     {
         return maxWaterableTiles;
     }
+
+    /**
+     * Returns the energy of a player who also placed the given sprinklers on
+     * their farm. The tiles watered by the sprinklers are added on top of the
+     * tiles the player can water by hand.
+     *
+     * @param sprinkler The type of the sprinklers
+     * @param numSprinklers The number of sprinklers of this type
+     */
+    public Energy withSprinklers(Sprinkler sprinkler, int numSprinklers)
+    {
+        return new Energy(maxWaterableTiles + numSprinklers*sprinkler.getNumTiles());
+    }
 }
@@ -0,0 +1,112 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.TreeMap;
+
+/**
+ * This class finds the most gold the player can end the season with for every
+ * combination of stardrops eaten, watering can level and farming proficiency level.
+ *
+ * The energy of the player only matters to the solver through the number of
+ * tiles they can water a day, and many combinations can water the same number
+ * of tiles. So the combinations are grouped by their number of tiles first, every
+ * number of tiles is solved once, and its result is given to every combination
+ * in the group.
+ *
+ * Every number of tiles is solved by the same search, one after another from the
+ * most tiles to the fewest, so they all share the same permutations and the same
+ * transposition table. A state solved for more tiles is reused for fewer tiles
+ * whenever its farms never had the gold for more seeds than those fewer tiles,
+ * see FarmSolver.
+ *
+ * The table is written to sweep.csv with a row for every combination.
+ */
+public class EnergySweep
+{
+    private static final int MAX_STARDROPS = 7;
+    private static final int MAX_PROFICIENCY = 10;
+
+    //a combination of the player's energy, along with the number of tiles it can water
+    private static class Configuration
+    {
+        private final int numStardropsEaten;
+        private final Level wateringCanLevel;
+        private final int farmingProficiencyLevel;
+        private final int maxWaterableTiles;
+
+        public Configuration(int numStardropsEaten, Level wateringCanLevel, int farmingProficiencyLevel)
+        {
+            this.numStardropsEaten = numStardropsEaten;
+            this.wateringCanLevel = wateringCanLevel;
+            this.farmingProficiencyLevel = farmingProficiencyLevel;
+            this.maxWaterableTiles = new Energy(numStardropsEaten, wateringCanLevel, farmingProficiencyLevel).maxWaterableTiles();
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        //editable variables
+        final int day = 6; //1-28, every day earlier takes several times longer to solve
+        final CropCalculator.SEASON season = CropCalculator.SEASON.SUMMER;
+        final int gold = 100;
+        final long maxCachedPermutations = 2000000; //0 for no limit
+        final long maxSolvedStates = 0; //0 for no limit
+
+        double startTime = System.nanoTime();
+
+        //every combination of the player's energy, grouped by the number of tiles it can water
+        ArrayList<Configuration> configurations = new ArrayList<>();
+        TreeMap<Integer, Integer> bestGold = new TreeMap<>(); //the most gold for every number of tiles, once solved
+        for (int numStardropsEaten = 0; numStardropsEaten <= MAX_STARDROPS; numStardropsEaten++)
+        {
+            for (Level wateringCanLevel : Level.values())
+            {
+                for (int farmingProficiencyLevel = 0; farmingProficiencyLevel <= MAX_PROFICIENCY; farmingProficiencyLevel++)
+                {
+                    Configuration configuration = new Configuration(numStardropsEaten, wateringCanLevel, farmingProficiencyLevel);
+                    configurations.add(configuration);
+                    bestGold.put(configuration.maxWaterableTiles, null);
+                }
+            }
+        }
+        System.out.println(configurations.size() + " combinations water " + bestGold.size() + " different numbers of tiles");
+
+        //solve every number of tiles on the same context, so that nothing is calculated twice
+        ArrayList<Crop> crops = CropCalculator.getCrops(season);
+        SimulationContext context = new SimulationContext(crops, CropCalculator.DAYS_IN_A_SEASON - day + 1,
+                                                          new Energy(bestGold.lastKey()), maxCachedPermutations);
+        FarmSolver solver = new FarmSolver(context, maxSolvedStates);
+        for (int tiles : bestGold.descendingKeySet())
+        {
+            context.setEnergy(new Energy(tiles));
+            bestGold.put(tiles, solver.solve(gold).getGold());
+        }
+
+        //give every combination the result of its number of tiles
+        try (PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter("sweep.csv"))))
+        {
+            writer.println("stardrops,watering_can,proficiency,tiles,gold");
+            for (Configuration configuration : configurations)
+            {
+                writer.println(configuration.numStardropsEaten + "," +
+                               configuration.wateringCanLevel + "," +
+                               configuration.farmingProficiencyLevel + "," +
+                               configuration.maxWaterableTiles + "," +
+                               bestGold.get(configuration.maxWaterableTiles));
+            }
+            if (writer.checkError())
+            {
+                throw new IOException("Unable to write the table");
+            }
+        }
+        catch (IOException e)
+        {
+            System.out.println("Error, Unable to create or write to sweep file...");
+            e.printStackTrace();
+        }
+
+        System.out.println("Time: " + (System.nanoTime() - startTime)/1000000000 + " seconds");
+    }
+}
@@ -1,117 +1,109 @@
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 
+/**
+ * This class represents a single farm on a single day.
+ *
+ * The crops on the farm are stored as a flat array of counts. Every type of
+ * crop owns a fixed range of this array, with one slot for every age the crop
+ * can be while growing, followed by one slot for every age the crop can be
+ * while regrowing after its first harvest:
+ *
+ *      [growing age 0 ... growing age growthTime][regrowing age 0 ... regrowing age regrowthTime]
+ *
+ * Crops that cannot regrow have no regrowing slots. The last slot of each
+ * range only holds crops between advancing and harvesting them, so it is
+ * always empty at the end of a day. Two farms with the same crops therefore
+ * always have the same array, no matter the order the seeds were planted in.
+ */
 public class Farm implements Comparable<Farm>
 {
-    private static HashMap<String, ArrayList<FarmProto>> cachedFarms; //a memoization cache of all combinations that have already been seen
-    private static ArrayList<Crop> cropTypes; //all unique types of crops
-    private static int daysRemaining;
-    private static int leastExpensiveCropValue;
-    private ArrayList<CropGroup> crops; //the crops currently on the farm
+    private final SimulationContext context; //shared by all farms of the same simulation
+    private int[] crops; //the number of crops currently on the farm in each slot
     private int gold;
     private int goldCache; //crops are not sold immediately after harvesting; the gold is obtained the following day
-    private ArrayList<FarmEvent> events; //a snapshot of the events that occurred on this farm every day
-    private FarmEvent event; //the events for the current day on this farm
+    private int startingGold; //the gold this farm had at the beginning of the current day
+    private FarmHistory history; //the decisions made on this farm every day, shared with the farms it was permutated from
+    private FarmEvent event; //the events for the current day on this farm, only recorded when replaying the history
 
-    public Farm(ArrayList<CropGroup> crops, int gold, int goldCache, ArrayList<FarmEvent> events)
+    //the crops given are owned by this farm from now on and must not be shared with another farm
+    public Farm(SimulationContext context, int[] crops, int gold, int goldCache, FarmHistory history)
     {
+        this.context = context;
         this.gold = gold;
         this.goldCache = goldCache;
+        this.startingGold = gold;
+        this.history = history;
         this.event = null;
 
-        this.crops = new ArrayList<>();
         if (crops != null)
         {
-            for (CropGroup cropGroup : crops)
-            {
-                this.crops.add(cropGroup.clone());
-            }
+            this.crops = crops;
         }
-
-        this.events = new ArrayList<>();
-        if (events != null)
+        else
         {
-            for (FarmEvent farmEvent : events)
-            {
-                this.events.add(farmEvent.clone());
-            }
+            this.crops = new int[context.getNumSlots()];
         }
     }
 
     /**
-     * Performs first time initilization for all farms.
-     *
-     * All farms share the exact same types of crops
-     * they can choose from to plant on the farm and
-     * the exact same number of days remaining before
-     * the end of the season, so these are static
-     * variables.
-     */
-    public static void initialize(ArrayList<Crop> crops, int daysLeft, int leastExpensiveCropCost)
-    {
-        cachedFarms = new HashMap<>();
-        cropTypes = new ArrayList<>(crops);
-        daysRemaining = daysLeft;
-        leastExpensiveCropValue = leastExpensiveCropCost;
-        update();
-    }
-
-    /**
-     * Updates all farms for the beginning of a new day.
+     * Main logic loop for a farm.
      *
-     * Filters out and removes all seeds that could not
-     * possibly yield crops before the end of the season.
+     * Advances the crops, harvests the crops, and invests in more crops.
      *
-     * Decrements the number of days remaining.
+     * @return Every single valid permutation of this farm possible, advanced one day.
      */
-    public static void update()
+    ArrayList<Farm> simulateDay()
     {
-        daysRemaining--;
-
-        ArrayList<Crop> invalidCrops = new ArrayList<>();
-        for (Crop cropType : cropTypes)
-        {
-            if (cropType.getGrowthTime() > daysRemaining)
-            {
-                invalidCrops.add(cropType);
-            }
-        }
-        cropTypes.removeAll(invalidCrops);
+        beginDay(context.getDaysRemaining(), false);
+        return invest();
     }
 
     /**
-     * Main logic loop for a farm.
-     *
-     * Advances the crops, harvests the crops, and invests in more crops.
+     * Advances the crops, collects yesterday's gold and harvests the crops.
      *
-     * @return Every single valid permutation of this farm possible, advanced one day.
+     * @param daysLeft The days left before the end of the season on this day
+     * @param record Whether to record the day in a new FarmEvent, used when replaying a history
      */
-    ArrayList<Farm> simulateDay()
+    private void beginDay(int daysLeft, boolean record)
     {
         advanceCrops();
         gold += goldCache;
         goldCache = 0;
+        startingGold = gold;
 
-        event = new FarmEvent(daysRemaining, gold, crops);
-        events.add(event);
+        if (record)
+        {
+            event = new FarmEvent(daysLeft, gold, getCropGroups());
+        }
 
-        harvest();
+        harvest(daysLeft);
 
         //there are no days remaining before the end of the season
         //so pretend the crops you sold today give you instant gold
-        if (daysRemaining == 0)
+        if (daysLeft == 0)
         {
             gold += goldCache;
         }
-
-        return invest();
     }
 
+    //ages every crop by one day
     private void advanceCrops()
     {
-        for (CropGroup cropGroup : crops)
+        for (int i = 0; i < context.getNumCropTypes(); i++)
         {
-            cropGroup.advance();
+            Crop crop = context.getCropType(i);
+            int growthTime = crop.getGrowthTime();
+            int growing = context.getOffset(i);
+            System.arraycopy(crops, growing, crops, growing + 1, growthTime);
+            crops[growing] = 0;
+
+            if (crop.canRegrow())
+            {
+                int regrowing = growing + growthTime + 1;
+                System.arraycopy(crops, regrowing, crops, regrowing + 1, crop.getRegrowthTime());
+                crops[regrowing] = 0;
+            }
         }
     }
 
@@ -126,20 +118,47 @@ public class Farm implements Comparable<Farm>
      * disappear in the logs after a certain day. It just means they would not have yielded
      * fruit before the end of the season, and the program cleaned them up to improve runtime.
      */
-    private void harvest()
+    private void harvest(int daysLeft)
     {
-        //maintain a list of all the crops to remove
-        ArrayList<CropGroup> worthlessCrops = new ArrayList<>();
-        for (CropGroup cropGroup : crops)
+        for (int i = 0; i < context.getNumCropTypes(); i++)
         {
-            goldCache += cropGroup.harvest(event);
+            Crop crop = context.getCropType(i);
+            int growthTime = crop.getGrowthTime();
+            int growing = context.getOffset(i);
+
+            //crops that reached maturity or finished regrowing today
+            int number = crops[growing + growthTime];
+            crops[growing + growthTime] = 0;
+            if (crop.canRegrow())
+            {
+                int regrowing = growing + growthTime + 1;
+                number += crops[regrowing + crop.getRegrowthTime()];
+                crops[regrowing + crop.getRegrowthTime()] = 0;
+                crops[regrowing] = number;
+
+                //remove crops that cannot regrow before the end of the season
+                for (int age = 0; age <= crop.getRegrowthTime() && daysLeft < crop.getRegrowthTime() - age; age++)
+                {
+                    crops[regrowing + age] = 0;
+                }
+            }
 
-            if (!cropGroup.canProduceMore(daysRemaining))
+            //remove crops that cannot grow to maturity before the end of the season
+            for (int age = 0; age < growthTime && daysLeft < growthTime - age; age++)
             {
-                worthlessCrops.add(cropGroup);
+                crops[growing + age] = 0;
+            }
+
+            if (number > 0)
+            {
+                int gold = crop.getHarvestValue(number);
+                goldCache += gold;
+                if (event != null)
+                {
+                    event.addHarvestedCrops(new CropGroup(crop, number, 0, true), gold);
+                }
             }
         }
-        crops.removeAll(worthlessCrops); //TODO test runtime with individual remove() calls
     }
 
     public ArrayList<Farm> invest()
@@ -152,25 +171,27 @@ public class Farm implements Comparable<Farm>
          *
          * In any of these cases, return this farm progressed one day.
          */
-        if (cropTypes.size() == 0 ||
+        int leastExpensiveCropValue = context.getLeastExpensiveCropValue();
+        if (context.getCropTypes().size() == 0 ||
             gold < leastExpensiveCropValue ||
-            getNumCrops() >= Energy.maxWaterableTiles())
+            getNumCrops() >= context.getEnergy().maxWaterableTiles())
         {
             ArrayList<Farm> noPermutation = new ArrayList<>();
-            event.setEndingGold(gold, goldCache);
-            event.setSeedsPurchased(null);
+            history = new FarmHistory(history, context.getDaysRemaining(), startingGold, gold, goldCache, null);
             noPermutation.add(this);
             return noPermutation;
         }
         //calculate all permutations of farms
         else
         {
-            String hashString = createHash();
-            if (!cachedFarms.containsKey(hashString))
+            long key = createKey();
+            long cropMask = context.getCropMask();
+            ArrayList<FarmProto> farmProtos = context.getCachedPermutations(key, cropMask);
+            if (farmProtos == null)
             {
                 //filter out seeds you don't have enough gold to purchase
                 ArrayList<Crop> validCrops = new ArrayList<>();
-                for (Crop cropType : cropTypes)
+                for (Crop cropType : context.getCropTypes())
                 {
                     if (this.gold >= cropType.getBuyPrice())
                     {
@@ -178,18 +199,32 @@ public class Farm implements Comparable<Farm>
                     }
                 }
 
-                int purchasingGold = this.gold - (this.gold % leastExpensiveCropValue);
-                cachedFarms.put(hashString, FarmPermutation.calculate(validCrops, getNumCrops(), purchasingGold));
+                int purchasingGold = this.gold - (this.gold % context.getGoldUnit());
+                farmProtos = context.cachePermutations(key,
+                                                       cropMask,
+                                                       FarmPermutation.calculate(context, validCrops, getNumCrops(), purchasingGold));
+            }
+
+            //some permutations were skipped when approximating, so keep track of how much gold they could have made
+            FarmBuckets buckets = context.getBuckets();
+            if (buckets.isThinned(this.gold - (this.gold % context.getGoldUnit())))
+            {
+                buckets.addThinnedFarm(context.getBound().getPermutationBound(this, context.getDaysRemaining()));
             }
 
             //turn Farm prototypes into full Farms
-            ArrayList<FarmProto> farmProtos = cachedFarms.get(hashString);
             ArrayList<Farm> farmPermutations = new ArrayList<>(farmProtos.size());
-            int remainingGold = this.gold % leastExpensiveCropValue;
+            int remainingGold = this.gold % context.getGoldUnit();
 
             for (FarmProto farmProto : farmProtos)
             {
-                farmPermutations.add(farmProto.createFarm(this.crops, this.events, remainingGold, this.goldCache));
+                farmPermutations.add(farmProto.createFarm(this.context,
+                                                          this.crops,
+                                                          this.history,
+                                                          context.getDaysRemaining(),
+                                                          this.startingGold,
+                                                          remainingGold,
+                                                          this.goldCache));
             }
 
             return farmPermutations;
@@ -197,16 +232,87 @@ public class Farm implements Comparable<Farm>
     }
 
     /**
-     * Creates a string that represents this Farm's choices for planting.
+     * Follows a single strategy on a copy of this farm until the end of the season.
+     *
+     * Every day, the copy spends its gold on the seeds that can become the most
+     * gold by the end of the season, for every gold spent on them. This is one
+     * of the permutations invest() creates, so some farm is always able to end
+     * the season with at least as much gold as the copy.
+     *
+     * @param daysLeft The days left before the end of the season on the day this farm finished
+     * @return The gold the copy ends the season with
+     */
+    public int followStrategy(int daysLeft)
+    {
+        Farm farm = new Farm(context, crops.clone(), gold, goldCache, null);
+        for (int day = daysLeft - 1; day >= 0; day--)
+        {
+            //no more seeds can grow, so the crops already on the farm decide the rest of the season
+            if (day < context.getTimeline().getShortestGrowthTime())
+            {
+                return farm.gold + farm.goldCache + context.getTimeline().getHarvestGold(farm.crops, day + 1);
+            }
+
+            farm.beginDay(day, false);
+            farm.investGreedily(day);
+        }
+        return farm.gold;
+    }
+
+    /**
+     * Spends this farm's gold on as many of the most valuable seeds as possible,
+     * then as many of the next most valuable seeds, and so on.
+     *
+     * @param daysLeft The days left before the end of the season on this day
+     */
+    private void investGreedily(int daysLeft)
+    {
+        int leastExpensiveCropValue = context.getLeastExpensiveCropValue();
+        int maxPlantableSeeds = context.getEnergy().maxWaterableTiles() - getNumCrops();
+        if (gold < leastExpensiveCropValue || maxPlantableSeeds <= 0)
+        {
+            return;
+        }
+
+        //the same seeds invest() would choose from on this day
+        ArrayList<Integer> validCrops = new ArrayList<>();
+        for (int i = 0; i < context.getNumCropTypes(); i++)
+        {
+            Crop cropType = context.getCropType(i);
+            if (cropType.getGrowthTime() <= daysLeft && gold >= cropType.getBuyPrice())
+            {
+                validCrops.add(i);
+            }
+        }
+        FarmBound bound = context.getBound();
+        validCrops.sort((a, b) -> Double.compare(bound.getSeedValue(b, daysLeft), bound.getSeedValue(a, daysLeft)));
+
+        int[] seeds = new int[context.getNumCropTypes()];
+        int purchasingGold = gold - (gold % context.getGoldUnit());
+        for (int cropId : validCrops)
+        {
+            int buyPrice = context.getCropType(cropId).getBuyPrice();
+            seeds[cropId] = Math.min(purchasingGold/buyPrice, maxPlantableSeeds);
+            purchasingGold -= seeds[cropId]*buyPrice;
+            maxPlantableSeeds -= seeds[cropId];
+        }
+
+        crops = context.plant(crops, seeds);
+        gold = purchasingGold + (gold % context.getGoldUnit());
+    }
+
+    /**
+     * Creates a key that represents this Farm's choices for planting.
      *
      * Variables that uniquely identify this Farm's choices for planting are:
      *      Gold
      *      Amount of Energy left to water more crops
+     *      The types of crops that can still grow before the end of the season
      *
      * Some Farms with different amounts of gold and energy left will result
      * in the same permutations. For example, a Farm with 101 gold and a
-     * Farm with 100 gold will give the same permutations if the least
-     * expensive crop costs 50 gold. Similarly, a Farm with 10 energy
+     * Farm with 100 gold will give the same permutations if every crop
+     * costs a multiple of 50 gold, see SimulationContext.getGoldUnit(). Similarly, a Farm with 10 energy
      * remaining and a farm with 100 energy remaining will also give the same
      * permutations if the Farm is unable to purchase, at maximum, 11 crops.
      *
@@ -216,37 +322,81 @@ public class Farm implements Comparable<Farm>
      * will not have an effect on the outcome (or in other words, if you
      * bought as many of the least expensive crop as possible, you would not
      * have negative energy leftover).
+     *
+     * The types of crops that can still grow are not part of the key. They
+     * are kept alongside it as the context's crop mask, a bit for every crop
+     * id, so the same key never means different crops on different days.
+     *
+     * @return The key
      */
-    public String createHash()
+    public long createKey()
     {
-        int goldHash = this.gold - (this.gold % leastExpensiveCropValue);
-        int energyHash = Energy.maxWaterableTiles() - getNumCrops();
+        int goldUnit = context.getGoldUnit();
+        int goldHash = this.gold - (this.gold % goldUnit);
+        int energyHash = context.getEnergy().maxWaterableTiles() - getNumCrops();
 
         //if energy requirements are not an issue, set to 0
-        if (goldHash/leastExpensiveCropValue <= energyHash)
+        if (goldHash/context.getLeastExpensiveCropValue() <= energyHash)
         {
             energyHash = 0;
         }
 
-        return new String(goldHash + "," + energyHash + ",");
+        return PermutationCache.createKey(goldHash/goldUnit, energyHash);
     }
 
     //returns the number of crops currently on this farm
     public int getNumCrops()
     {
         int sum = 0;
-        for (CropGroup cropGroup : crops)
+        for (int number : crops)
         {
-            sum += cropGroup.getNumber();
+            sum += number;
         }
         return sum;
     }
 
-    public ArrayList<CropGroup> getCrops()
+    public SimulationContext getContext()
+    {
+        return this.context;
+    }
+
+    public int[] getCrops()
     {
         return this.crops;
     }
 
+    //returns the crops currently on this farm as a list of groups, for logging
+    public ArrayList<CropGroup> getCropGroups()
+    {
+        ArrayList<CropGroup> cropGroups = new ArrayList<>();
+        for (int i = 0; i < context.getNumCropTypes(); i++)
+        {
+            Crop crop = context.getCropType(i);
+            int growthTime = crop.getGrowthTime();
+            int growing = context.getOffset(i);
+            for (int age = 0; age <= growthTime; age++)
+            {
+                if (crops[growing + age] > 0)
+                {
+                    cropGroups.add(new CropGroup(crop, crops[growing + age], age, false));
+                }
+            }
+
+            if (crop.canRegrow())
+            {
+                int regrowing = growing + growthTime + 1;
+                for (int age = 0; age <= crop.getRegrowthTime(); age++)
+                {
+                    if (crops[regrowing + age] > 0)
+                    {
+                        cropGroups.add(new CropGroup(crop, crops[regrowing + age], age, true));
+                    }
+                }
+            }
+        }
+        return cropGroups;
+    }
+
     public int getGold()
     {
         return this.gold;
@@ -257,17 +407,56 @@ public class Farm implements Comparable<Farm>
         return this.goldCache;
     }
 
-    public ArrayList<FarmEvent> getEvents()
+    public FarmHistory getHistory()
     {
-        return this.events;
+        return this.history;
     }
 
-    public void print()
+    /**
+     * Rebuilds the detailed events that occurred on this farm every day.
+     *
+     * Farms only keep the decisions they made, so the crops on the farm and
+     * the crops harvested are recreated by replaying those decisions on a new
+     * farm that starts with the same gold.
+     */
+    public ArrayList<FarmEvent> getEvents()
     {
-        for (FarmEvent event : events)
+        ArrayList<FarmEvent> events = new ArrayList<>();
+        if (history == null)
         {
-            event.printStrategy();
+            return events;
         }
+
+        ArrayList<FarmHistory> days = history.toList();
+        Farm replay = new Farm(context, null, days.get(0).getStartingGold(), 0, null);
+        for (FarmHistory day : days)
+        {
+            replay.beginDay(day.getDaysRemaining(), true);
+
+            //plant the seeds purchased on this day
+            ArrayList<CropGroup> seedsPurchased = null;
+            int[] seeds = day.getSeedsPurchased();
+            if (seeds != null)
+            {
+                replay.crops = context.plant(replay.crops, seeds);
+
+                seedsPurchased = new ArrayList<>();
+                for (int i = 0; i < seeds.length; i++)
+                {
+                    if (seeds[i] > 0)
+                    {
+                        seedsPurchased.add(new CropGroup(context.getCropType(i), seeds[i], 0, false));
+                    }
+                }
+            }
+            replay.gold = day.getEndingGold();
+            replay.goldCache = day.getEndingGoldCache();
+
+            replay.event.setSeedsPurchased(seedsPurchased);
+            replay.event.setEndingGold(day.getEndingGold(), day.getEndingGoldCache());
+            events.add(replay.event);
+        }
+        return events;
     }
 
     //sorts the farms by order of profit
@@ -276,4 +465,25 @@ public class Farm implements Comparable<Farm>
     {
         return other.gold - this.gold;
     }
+
+    //farms are equal if they have the same gold and the same crops, regardless of how they got there
+    @Override
+    public boolean equals(Object other)
+    {
+        if (!(other instanceof Farm))
+        {
+            return false;
+        }
+
+        Farm farm = (Farm) other;
+        return this.gold == farm.gold &&
+               this.goldCache == farm.goldCache &&
+               Arrays.equals(this.crops, farm.crops);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return 31*(31*gold + goldCache) + Arrays.hashCode(crops);
+    }
 }
@@ -0,0 +1,309 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class solves many scenarios at once, such as the farms of many players.
+ *
+ * The scenarios are read from a file with one scenario a line, lines starting
+ * with # being ignored:
+ *
+ *      day,season,gold,stardrops,watering can level,farming proficiency level
+ *      1,SUMMER,500,0,COPPER,0
+ *
+ * Scenarios with the same season and the same number of waterable tiles are
+ * grouped together. Every group is solved with a single depth-first search, see
+ * FarmSolver, so all of its scenarios share the memoization cache of permutations
+ * and the transposition table, whatever day they start on and whatever gold they
+ * start with. The groups are solved on their own threads.
+ *
+ * The most profitable strategy of every scenario is written as soon as it is found,
+ * as one JSON object a line, so the results are in the order the scenarios finish.
+ */
+public class FarmBatch
+{
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final int numThreads;
+    private final long maxCachedPermutations; //the most permutations kept in each group's memoization cache, 0 for no limit
+    private final long maxSolvedStates; //the most states kept in each group's transposition table, 0 for no limit
+
+    //a single line of the scenarios file
+    public static class Scenario
+    {
+        private final int id; //the number of the scenario in the file, starting from 0
+        private final int day;
+        private final CropCalculator.SEASON season;
+        private final int gold;
+        private final int numStardropsEaten;
+        private final Level wateringCanLevel;
+        private final int farmingProficiencyLevel;
+        private final Energy energy;
+
+        public Scenario(int id, int day, CropCalculator.SEASON season, int gold,
+                        int numStardropsEaten, Level wateringCanLevel, int farmingProficiencyLevel)
+        {
+            this.id = id;
+            this.day = day;
+            this.season = season;
+            this.gold = gold;
+            this.numStardropsEaten = numStardropsEaten;
+            this.wateringCanLevel = wateringCanLevel;
+            this.farmingProficiencyLevel = farmingProficiencyLevel;
+            this.energy = new Energy(numStardropsEaten, wateringCanLevel, farmingProficiencyLevel);
+        }
+
+        /**
+         * Reads a scenario from its fields, in the order of a line of the scenarios file.
+         *
+         * @throws IllegalArgumentException If the fields are not a valid scenario
+         */
+        public static Scenario parse(int id, String[] fields)
+        {
+            if (fields.length != 6)
+            {
+                throw new IllegalArgumentException("expected 6 fields but found " + fields.length);
+            }
+
+            int day = Integer.parseInt(fields[0].trim());
+            CropCalculator.SEASON season = CropCalculator.SEASON.valueOf(fields[1].trim().toUpperCase());
+            if (day < 1 || day > CropCalculator.DAYS_IN_A_SEASON)
+            {
+                throw new IllegalArgumentException("the day must be from 1 to " + CropCalculator.DAYS_IN_A_SEASON);
+            }
+            if (CropCalculator.getCrops(season).isEmpty())
+            {
+                throw new IllegalArgumentException("no crops can be planted in " + season);
+            }
+
+            return new Scenario(id,
+                                day,
+                                season,
+                                Integer.parseInt(fields[2].trim()),
+                                Integer.parseInt(fields[3].trim()),
+                                Level.valueOf(fields[4].trim().toUpperCase()),
+                                Integer.parseInt(fields[5].trim()));
+        }
+
+        //scenarios with the same key can share a context
+        public String getGroupKey()
+        {
+            return season + "," + energy.maxWaterableTiles();
+        }
+
+        //the days left before the end of the season on the day the scenario starts
+        public int getDaysLeft()
+        {
+            return CropCalculator.DAYS_IN_A_SEASON - day;
+        }
+
+        public int getGold()
+        {
+            return gold;
+        }
+    }
+
+    /**
+     * @param numThreads The number of groups solved at once
+     * @param maxCachedPermutations The most permutations kept in each group's memoization cache, 0 for no limit
+     * @param maxSolvedStates The most states kept in each group's transposition table, 0 for no limit
+     */
+    public FarmBatch(int numThreads, long maxCachedPermutations, long maxSolvedStates)
+    {
+        this.numThreads = Math.max(1, numThreads);
+        this.maxCachedPermutations = maxCachedPermutations;
+        this.maxSolvedStates = maxSolvedStates;
+    }
+
+    /**
+     * Solves every scenario in the given file, writing the results as they finish.
+     *
+     * Usage: java FarmBatch scenarios.csv [results.jsonl]
+     */
+    public static void main(String[] args)
+    {
+        //editable variables
+        final int numThreads = Runtime.getRuntime().availableProcessors();
+        final long maxCachedPermutations = 2000000; //0 for no limit
+        final long maxSolvedStates = 0; //0 for no limit
+
+        if (args.length < 1)
+        {
+            System.out.println("Usage: java FarmBatch scenarios.csv [results.jsonl]");
+            return;
+        }
+        Path scenariosFile = Paths.get(args[0]);
+        String resultsFile = args.length > 1 ? args[1] : "results.jsonl";
+
+        double startTime = System.nanoTime();
+        try
+        {
+            ArrayList<Scenario> scenarios = readScenarios(scenariosFile);
+            new FarmBatch(numThreads, maxCachedPermutations, maxSolvedStates).solve(scenarios, resultsFile);
+            System.out.println("Solved " + scenarios.size() + " scenarios");
+        }
+        catch (IOException | InterruptedException e)
+        {
+            System.out.println("Error, Unable to solve the scenarios...");
+            e.printStackTrace();
+        }
+        System.out.println("Time: " + (System.nanoTime() - startTime)/1000000000 + " seconds");
+    }
+
+    /**
+     * Reads the scenarios from the given file.
+     *
+     * @throws IOException If the file cannot be read, or a line is not a valid scenario
+     */
+    public static ArrayList<Scenario> readScenarios(Path file) throws IOException
+    {
+        ArrayList<Scenario> scenarios = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file))
+        {
+            int lineNumber = 0;
+            for (String line = reader.readLine(); line != null; line = reader.readLine())
+            {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#"))
+                {
+                    continue;
+                }
+
+                try
+                {
+                    scenarios.add(Scenario.parse(scenarios.size(), line.split(",")));
+                }
+                catch (IllegalArgumentException e)
+                {
+                    throw new IOException(file + ":" + lineNumber + " is not a valid scenario, " + e.getMessage(), e);
+                }
+            }
+        }
+        return scenarios;
+    }
+
+    /**
+     * Solves the given scenarios, writing the result of every scenario as soon as it is found.
+     *
+     * @param scenarios The scenarios to solve
+     * @param fileName The file to write the results to
+     * @throws IOException If the results could not be written, or a scenario could not be solved
+     */
+    public void solve(ArrayList<Scenario> scenarios, String fileName) throws IOException, InterruptedException
+    {
+        //group the scenarios that can share a context, in the order their first scenario appears
+        LinkedHashMap<String, ArrayList<Scenario>> groups = new LinkedHashMap<>();
+        for (Scenario scenario : scenarios)
+        {
+            groups.computeIfAbsent(scenario.getGroupKey(), key -> new ArrayList<>()).add(scenario);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(numThreads, Math.max(1, groups.size())));
+        try (PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(fileName), BUFFER_SIZE)))
+        {
+            List<Callable<Void>> tasks = new ArrayList<>(groups.size());
+            for (ArrayList<Scenario> group : groups.values())
+            {
+                tasks.add(() -> solveGroup(group, writer));
+            }
+
+            for (Future<Void> task : pool.invokeAll(tasks))
+            {
+                task.get();
+            }
+            if (writer.checkError())
+            {
+                throw new IOException("Unable to write the results");
+            }
+        }
+        catch (ExecutionException e)
+        {
+            throw new IOException("Unable to solve the scenarios", e.getCause());
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    //solves every scenario of a group with a single context and search, run on its own thread
+    private Void solveGroup(ArrayList<Scenario> group, PrintWriter writer)
+    {
+        FarmSolver solver = createSolver(group.get(0), maxCachedPermutations, maxSolvedStates);
+        for (Scenario scenario : group)
+        {
+            Farm farm = solver.solve(scenario.getGold(), scenario.getDaysLeft());
+
+            //the line is built before the writer is locked, so other groups never wait on rebuilding the events
+            String result = toJson(scenario, farm);
+            synchronized (writer)
+            {
+                writer.println(result);
+                writer.flush();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Creates a search that can solve every scenario in the same group as the given scenario.
+     *
+     * The context is created on the first day of the season, so that the search
+     * can start on any day.
+     *
+     * @param scenario Any scenario of the group
+     * @param maxCachedPermutations The most permutations kept in the memoization cache, 0 for no limit
+     * @param maxSolvedStates The most states kept in the transposition table, 0 for no limit
+     */
+    public static FarmSolver createSolver(Scenario scenario, long maxCachedPermutations, long maxSolvedStates)
+    {
+        ArrayList<Crop> crops = CropCalculator.getCrops(scenario.season);
+        SimulationContext context = new SimulationContext(crops, CropCalculator.DAYS_IN_A_SEASON, scenario.energy, maxCachedPermutations);
+        return new FarmSolver(context, maxSolvedStates);
+    }
+
+    //returns a single line of JSON with the scenario and its most profitable strategy
+    public static String toJson(Scenario scenario, Farm farm)
+    {
+        StringWriter line = new StringWriter();
+        PrintWriter result = new PrintWriter(line);
+        result.print("{\"scenario\":" + scenario.id +
+                     ",\"day\":" + scenario.day +
+                     ",\"season\":\"" + scenario.season + "\"" +
+                     ",\"startingGold\":" + scenario.gold +
+                     ",\"stardrops\":" + scenario.numStardropsEaten +
+                     ",\"wateringCan\":\"" + scenario.wateringCanLevel + "\"" +
+                     ",\"proficiency\":" + scenario.farmingProficiencyLevel +
+                     ",\"tiles\":" + scenario.energy.maxWaterableTiles() +
+                     ",\"gold\":" + farm.getGold() +
+                     ",\"days\":[");
+        boolean first = true;
+        for (FarmEvent event : farm.getEvents())
+        {
+            if (!first)
+            {
+                result.print(",");
+            }
+            event.printJson(result);
+            first = false;
+        }
+        result.print("]}");
+        result.flush();
+        return line.toString();
+    }
+}
@@ -0,0 +1,140 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A class for limiting the number of farms carried over to the next day.
+ *
+ * When the limit is crossed, only the farms with the highest scores are kept
+ * and the rest are discarded. This keeps the memory and time used by each day
+ * predictable, but the most profitable farm may be among the discarded farms.
+ * To tell how far off the result may be, the highest upper bound of all the
+ * discarded farms is kept.
+ */
+public class FarmBeam
+{
+    //ranks the farms to keep, higher scores are kept first
+    public interface Score
+    {
+        double score(Farm farm, int daysLeft);
+    }
+
+    //the most gold the farm can possibly end the season with
+    public static final Score UPPER_BOUND = (farm, daysLeft) -> farm.getContext().getBound().getUpperBound(farm, daysLeft);
+
+    //the farm's gold plus the gold its crops are expected to be sold for
+    public static final Score EXPECTED_VALUE = (farm, daysLeft) -> farm.getContext().getBound().getExpectedValue(farm, daysLeft);
+
+    private final FarmBound bound;
+    private final Score score;
+    private final int maxFarms; //the most farms carried over to the next day, 0 for no limit
+    private long numDiscardedFarms;
+    private double bestDiscardedBound; //the highest upper bound of all the discarded farms
+
+    /**
+     * @param context The simulation the farms belong to
+     * @param maxFrontierSize The most farms carried over to the next day, 0 for no limit
+     * @param memoryBudget The most megabytes of farms carried over to the next day, 0 for no limit
+     * @param farmScore How to rank the farms to keep
+     */
+    public FarmBeam(SimulationContext context, int maxFrontierSize, int memoryBudget, Score farmScore)
+    {
+        int maxFarmsInBudget = maxFrontierSize;
+        if (memoryBudget > 0)
+        {
+            int maxFarmsInMemory = (int) Math.min(Integer.MAX_VALUE, memoryBudget*1024L*1024L/context.estimateFarmSize());
+            if (maxFarmsInBudget == 0 || maxFarmsInMemory < maxFarmsInBudget)
+            {
+                maxFarmsInBudget = Math.max(1, maxFarmsInMemory);
+            }
+        }
+
+        bound = context.getBound();
+        maxFarms = maxFarmsInBudget;
+
+        score = farmScore;
+        numDiscardedFarms = 0;
+        bestDiscardedBound = 0;
+    }
+
+    /**
+     * Keeps the farms with the highest scores.
+     *
+     * @param farms The farms at the end of a day
+     * @param daysLeft The days left before the end of the season on that day
+     * @return At most the maximum number of farms, in the order they were given
+     */
+    public ArrayList<Farm> select(ArrayList<Farm> farms, int daysLeft)
+    {
+        if (maxFarms == 0 || farms.size() <= maxFarms)
+        {
+            return farms;
+        }
+
+        //rank the farms by score, ties keep the order they were given in
+        double[] scores = new double[farms.size()];
+        Integer[] ranking = new Integer[farms.size()];
+        for (int i = 0; i < farms.size(); i++)
+        {
+            scores[i] = score.score(farms.get(i), daysLeft);
+            ranking[i] = i;
+        }
+        Arrays.sort(ranking, (a, b) -> Double.compare(scores[b], scores[a]));
+
+        boolean[] kept = new boolean[farms.size()];
+        for (int i = 0; i < maxFarms; i++)
+        {
+            kept[ranking[i]] = true;
+        }
+
+        ArrayList<Farm> keptFarms = new ArrayList<>(maxFarms);
+        for (int i = 0; i < farms.size(); i++)
+        {
+            if (kept[i])
+            {
+                keptFarms.add(farms.get(i));
+            }
+            else
+            {
+                bestDiscardedBound = Math.max(bestDiscardedBound, bound.getUpperBound(farms.get(i), daysLeft));
+            }
+        }
+
+        numDiscardedFarms += farms.size() - maxFarms;
+        return keptFarms;
+    }
+
+    //returns the most farms carried over to the next day, 0 for no limit
+    public int getMaxFarms()
+    {
+        return maxFarms;
+    }
+
+    public long getNumDiscardedFarms()
+    {
+        return numDiscardedFarms;
+    }
+
+    //returns the highest upper bound of all the discarded farms
+    public double getBestDiscardedBound()
+    {
+        return bestDiscardedBound;
+    }
+
+    //restores the discarded farms of an earlier run, such as a checkpoint
+    public void restore(long numDiscardedFarms, double bestDiscardedBound)
+    {
+        this.numDiscardedFarms = numDiscardedFarms;
+        this.bestDiscardedBound = bestDiscardedBound;
+    }
+
+    /**
+     * Returns the most gold a farm may be able to end the season with
+     * beyond the given gold, if it had not been discarded.
+     *
+     * @param bestGold The gold of the most profitable farm that was kept
+     */
+    public double getGap(int bestGold)
+    {
+        return Math.max(0, bestDiscardedBound - bestGold);
+    }
+}
@@ -0,0 +1,327 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+
+/**
+ * A class for bounding the gold a farm can end the season with, so that
+ * farms that cannot possibly become the most profitable farm are pruned.
+ *
+ * The upper bound solves a relaxed version of the problem: gold can be spent
+ * in fractions, any number of tiles can be watered and every harvest yields
+ * exactly its average chance for more crops. Under these conditions every
+ * gold is independent of every other gold, so the most that a single gold can
+ * become by the end of the season only has to be calculated once for every day.
+ * No real farm can do better than this.
+ *
+ * The lower bound follows one real strategy until the end of the season, so
+ * there is always a farm that ends the season with at least that much gold.
+ */
+public class FarmBound
+{
+    private static final int NUM_STRATEGIES = 8; //the number of farms a strategy is followed for on every day
+    private final SimulationContext context;
+    private final double[] goldMultipliers; //the most 1 gold available for investing can become, indexed by days remaining
+    private final double[][] cropValues; //the most a single crop can become, indexed by days remaining and slot
+    private int bestLowerBound; //the most gold a farm is known to be able to end the season with
+
+    /**
+     * Calculates the bounds for every day of the season.
+     *
+     * @param context The simulation, on its first day
+     */
+    public FarmBound(SimulationContext context)
+    {
+        this.context = context;
+        int daysLeft = context.getDaysRemaining();
+        goldMultipliers = new double[daysLeft + 1];
+        cropValues = new double[daysLeft + 1][context.getNumSlots()];
+        bestLowerBound = 0;
+
+        //every day depends only on the days after it, so start at the end of the season
+        for (int day = 0; day <= daysLeft; day++)
+        {
+            goldMultipliers[day] = 1;
+            if (day > 0)
+            {
+                goldMultipliers[day] = goldMultipliers[day-1]; //hold onto the gold until tomorrow
+            }
+
+            for (int i = 0; i < context.getNumCropTypes(); i++)
+            {
+                Crop crop = context.getCropType(i);
+                int growthTime = crop.getGrowthTime();
+                int growing = context.getOffset(i);
+
+                for (int age = 0; age < growthTime; age++)
+                {
+                    cropValues[day][growing + age] = getHarvestValue(crop, day - (growthTime - age));
+                }
+
+                if (crop.canRegrow())
+                {
+                    int regrowing = growing + growthTime + 1;
+                    for (int age = 0; age < crop.getRegrowthTime(); age++)
+                    {
+                        cropValues[day][regrowing + age] = getHarvestValue(crop, day - (crop.getRegrowthTime() - age));
+                    }
+                }
+
+                //invest in this crop today
+                if (growthTime <= day)
+                {
+                    goldMultipliers[day] = Math.max(goldMultipliers[day], cropValues[day][growing]/crop.getBuyPrice());
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the most gold a single crop harvested on the given day (and
+     * every day it regrows after that) can become by the end of the season.
+     *
+     * @param crop The type of crop
+     * @param daysLeft The days left before the end of the season on the first harvest
+     */
+    private double getHarvestValue(Crop crop, int daysLeft)
+    {
+        double value = 0;
+        double gold = crop.getSellPrice()*(1 + crop.getChanceForMore()/100.0);
+        while (daysLeft >= 0)
+        {
+            //gold from harvesting arrives the following day, except on the last day of the season
+            if (daysLeft == 0)
+            {
+                value += gold;
+            }
+            else
+            {
+                value += gold*goldMultipliers[daysLeft-1];
+            }
+
+            if (!crop.canRegrow())
+            {
+                break;
+            }
+            daysLeft -= crop.getRegrowthTime();
+        }
+        return value;
+    }
+
+    /**
+     * Returns the most gold the given farm can possibly end the season with.
+     *
+     * @param farm A farm at the end of a day
+     * @param daysLeft The days left before the end of the season on that day
+     */
+    public double getUpperBound(Farm farm, int daysLeft)
+    {
+        //the season is over
+        if (daysLeft == 0)
+        {
+            return farm.getGold();
+        }
+
+        double bound = (farm.getGold() + farm.getGoldCache())*goldMultipliers[daysLeft-1];
+        int[] crops = farm.getCrops();
+        for (int i = 0; i < crops.length; i++)
+        {
+            if (crops[i] > 0)
+            {
+                bound += crops[i]*cropValues[daysLeft][i];
+            }
+        }
+        return bound;
+    }
+
+    /**
+     * Returns the most gold any permutation of the given farm can possibly
+     * end the season with, without calculating the permutations.
+     *
+     * Every gold the farm has can either be invested today or held onto, so it
+     * can become at most as much as gold available for investing today.
+     *
+     * @param farm A farm that has harvested its crops but not invested yet
+     * @param daysLeft The days left before the end of the season on that day
+     */
+    public double getPermutationBound(Farm farm, int daysLeft)
+    {
+        if (daysLeft == 0)
+        {
+            return farm.getGold() + farm.getGoldCache();
+        }
+
+        double bound = farm.getGold()*goldMultipliers[daysLeft] + farm.getGoldCache()*goldMultipliers[daysLeft-1];
+        int[] crops = farm.getCrops();
+        for (int i = 0; i < crops.length; i++)
+        {
+            if (crops[i] > 0)
+            {
+                bound += crops[i]*cropValues[daysLeft][i];
+            }
+        }
+        return bound;
+    }
+
+    /**
+     * Returns the gold the given farm is expected to have if it sells all of its
+     * crops that can still be harvested and plants no more seeds.
+     *
+     * @param farm A farm at the end of a day
+     * @param daysLeft The days left before the end of the season on that day
+     */
+    public double getExpectedValue(Farm farm, int daysLeft)
+    {
+        //the season is over
+        if (daysLeft == 0)
+        {
+            return farm.getGold();
+        }
+
+        CropTimeline timeline = context.getTimeline();
+        double value = farm.getGold() + farm.getGoldCache();
+        int[] crops = farm.getCrops();
+        for (int i = 0; i < crops.length; i++)
+        {
+            if (crops[i] > 0)
+            {
+                value += crops[i]*timeline.getRevenue(i, daysLeft);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Returns the most gold a single seed planted on the given day
+     * can become by the end of the season, for every gold spent on it.
+     */
+    public double getSeedValue(int cropId, int daysLeft)
+    {
+        return cropValues[daysLeft][context.getOffset(cropId)]/context.getCropType(cropId).getBuyPrice();
+    }
+
+    public int getBestLowerBound()
+    {
+        return bestLowerBound;
+    }
+
+    //raises the lower bound to a strategy known from an earlier run, such as a checkpoint
+    public void raiseLowerBound(int gold)
+    {
+        bestLowerBound = Math.max(bestLowerBound, gold);
+    }
+
+    /**
+     * Removes every farm that cannot end the season with more gold than a
+     * farm is already known to be able to end the season with.
+     *
+     * The lower bound is first raised by following a strategy for the farms
+     * with the highest upper bounds. A farm whose strategy sets the lower
+     * bound is never removed, so the most profitable farm is never removed.
+     *
+     * The farm with the highest upper bound is always kept, even if it cannot
+     * reach the lower bound. Farms merged into gold buckets or skipped by seed
+     * blocks may have set the lower bound on an earlier day, leaving no farm
+     * that can still reach it, and the season must still end with some farm.
+     *
+     * @param farms The farms at the end of a day
+     * @param daysLeft The days left before the end of the season on that day
+     * @return The farms that can still become the most profitable farm
+     */
+    public ArrayList<Farm> prune(ArrayList<Farm> farms, int daysLeft)
+    {
+        double[] upperBounds = new double[farms.size()];
+        PriorityQueue<Integer> bestFarms = new PriorityQueue<>((a, b) -> Double.compare(upperBounds[a], upperBounds[b]));
+        int bestFarm = -1; //the farm with the highest upper bound
+        for (int i = 0; i < farms.size(); i++)
+        {
+            upperBounds[i] = getUpperBound(farms.get(i), daysLeft);
+            if (bestFarm == -1 || upperBounds[i] > upperBounds[bestFarm])
+            {
+                bestFarm = i;
+            }
+            bestFarms.add(i);
+            if (bestFarms.size() > NUM_STRATEGIES)
+            {
+                bestFarms.poll();
+            }
+        }
+
+        for (int i : bestFarms)
+        {
+            bestLowerBound = Math.max(bestLowerBound, farms.get(i).followStrategy(daysLeft));
+        }
+
+        //gold is whole, so allow for rounding errors in the upper bounds
+        ArrayList<Farm> remainingFarms = new ArrayList<>();
+        for (int i = 0; i < farms.size(); i++)
+        {
+            if (upperBounds[i] > bestLowerBound - 0.5 || i == bestFarm)
+            {
+                remainingFarms.add(farms.get(i));
+            }
+        }
+        return remainingFarms;
+    }
+
+    /**
+     * Removes every farm that has the exact same crops as another farm but
+     * less gold and a smaller gold cache.
+     *
+     * Note that this is not guaranteed to keep the most profitable farm.
+     * Farms must spend their gold on seeds whenever they can afford them,
+     * and a seed bought with the extra gold takes up a tile that another
+     * crop may have been able to use more profitably later on.
+     */
+    public static ArrayList<Farm> removeDominated(ArrayList<Farm> farms)
+    {
+        //group the farms by their crops
+        HashMap<CropsKey, ArrayList<Farm>> farmsByCrops = new HashMap<>();
+        for (Farm farm : farms)
+        {
+            farmsByCrops.computeIfAbsent(new CropsKey(farm.getCrops()), key -> new ArrayList<>()).add(farm);
+        }
+
+        ArrayList<Farm> remainingFarms = new ArrayList<>();
+        for (ArrayList<Farm> group : farmsByCrops.values())
+        {
+            //sorted by gold, a farm is dominated if a farm before it has at least as large a gold cache
+            Collections.sort(group, (a, b) -> a.getGold() != b.getGold() ? b.getGold() - a.getGold()
+                                                                         : b.getGoldCache() - a.getGoldCache());
+            int largestGoldCache = -1;
+            for (Farm farm : group)
+            {
+                if (farm.getGoldCache() > largestGoldCache)
+                {
+                    remainingFarms.add(farm);
+                    largestGoldCache = farm.getGoldCache();
+                }
+            }
+        }
+        return remainingFarms;
+    }
+
+    //wraps a farm's crops so that farms can be grouped by them
+    private static class CropsKey
+    {
+        private final int[] crops;
+
+        public CropsKey(int[] crops)
+        {
+            this.crops = crops;
+        }
+
+        @Override
+        public boolean equals(Object other)
+        {
+            return other instanceof CropsKey && Arrays.equals(this.crops, ((CropsKey) other).crops);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Arrays.hashCode(crops);
+        }
+    }
+}
@@ -0,0 +1,322 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A class for approximating farms that are worth nearly the same gold, so that
+ * large amounts of gold can be simulated in a reasonable time.
+ *
+ * Gold is split into buckets, either a fixed number of gold wide, a fraction
+ * of the gold wide, or both. This is used in two ways.
+ *
+ * When a farm invests, the number of seeds of every crop but the least expensive
+ * one only steps by as many seeds as a bucket of gold buys, rather than by one.
+ * Farms with a lot of gold have far too many permutations to create otherwise.
+ * The seeds can also be bought in blocks of a fixed number of seeds, for farms
+ * with hundreds of tiles watered by sprinklers, in which case the number of seeds
+ * steps by whichever is larger.
+ *
+ * Farms with the same number of crops whose gold,
+ * gold cache and the gold their crops are expected to be sold for all fall
+ * into the same buckets are merged into the farm expected to be worth the most.
+ * Farms with the exact same crops and gold are rarely found, as every farm
+ * spends its gold whenever it can, so the crops themselves are only compared
+ * by the gold they are worth.
+ *
+ * The most profitable farm may be among the merged farms or the skipped seeds,
+ * so the highest upper bound of all of them is kept to tell how far off the
+ * result may be.
+ *
+ * Farms may be merged on any number of threads at once.
+ */
+public class FarmBuckets
+{
+    private final FarmBound bound;
+    private final int leastExpensiveCropValue;
+    private final int bucketSize; //the gold in every bucket, 0 for no fixed buckets
+    private final double bucketRatio; //the fraction of the gold every bucket spans, 0 for no growing buckets
+    private final int seedBlockSize; //the number of seeds in every block, 0 for no blocks
+    private long numMergedFarms;
+    private long numThinnedFarms; //the number of farms that skipped some numbers of seeds when investing
+    private double bestMergedBound; //the highest upper bound of all the merged farms and skipped seeds
+
+    /**
+     * @param context The simulation the farms belong to
+     * @param bucketSize The gold in every bucket, 0 for no fixed buckets
+     * @param bucketRatio The fraction of the gold every bucket spans, such as 0.05 for 5%, 0 for no growing buckets
+     * @param seedBlockSize The number of seeds in every block, 0 for no blocks
+     */
+    public FarmBuckets(SimulationContext context, int bucketSize, double bucketRatio, int seedBlockSize)
+    {
+        this.bound = context.getBound();
+        this.leastExpensiveCropValue = context.getLeastExpensiveCropValue();
+        this.bucketSize = bucketSize;
+        this.bucketRatio = bucketRatio;
+        this.seedBlockSize = seedBlockSize;
+        this.numMergedFarms = 0;
+        this.numThinnedFarms = 0;
+        this.bestMergedBound = 0;
+    }
+
+    public int getBucketSize()
+    {
+        return bucketSize;
+    }
+
+    public double getBucketRatio()
+    {
+        return bucketRatio;
+    }
+
+    public int getSeedBlockSize()
+    {
+        return seedBlockSize;
+    }
+
+    //indicates whether farms are never merged nor seeds skipped, so the result is exact
+    public boolean isExact()
+    {
+        return !mergesFarms() && seedBlockSize <= 1;
+    }
+
+    //indicates whether farms are merged into gold buckets, rather than only buying seeds in blocks
+    private boolean mergesFarms()
+    {
+        return bucketSize > 1 || bucketRatio > 0;
+    }
+
+    /**
+     * Merges the farms that fall into the same buckets.
+     *
+     * @param farms The farms at the end of a day
+     * @param daysLeft The days left before the end of the season on that day
+     * @return The farm expected to be worth the most of every bucket, in the order they were given
+     */
+    public ArrayList<Farm> merge(ArrayList<Farm> farms, int daysLeft)
+    {
+        if (!mergesFarms())
+        {
+            return farms;
+        }
+
+        Merger merger = createMerger(daysLeft);
+        merger.addAll(farms);
+        return merger.finish();
+    }
+
+    /**
+     * Creates a merger that merges farms as they are added, so that the farms
+     * of a whole day never have to be gathered before they are merged.
+     *
+     * @param daysLeft The days left before the end of the season on the day the farms finished
+     */
+    public Merger createMerger(int daysLeft)
+    {
+        return new Merger(daysLeft);
+    }
+
+    //merges farms one at a time, only used by a single thread
+    public class Merger
+    {
+        private final int daysLeft;
+        private final HashMap<BucketKey, Integer> buckets; //the index of the farm kept for every bucket
+        private final ArrayList<Farm> keptFarms;
+        private double[] keptValues; //the expected value of every farm kept
+        private long numAdded;
+        private long numMerged;
+        private double bestBound;
+
+        private Merger(int daysLeft)
+        {
+            this.daysLeft = daysLeft;
+            this.buckets = new HashMap<>();
+            this.keptFarms = new ArrayList<>();
+            this.keptValues = new double[16];
+        }
+
+        //adds the given farms, merging them with the farms already added
+        public void addAll(ArrayList<Farm> farms)
+        {
+            numAdded += farms.size();
+            if (!mergesFarms())
+            {
+                keptFarms.addAll(farms);
+                return;
+            }
+
+            for (Farm farm : farms)
+            {
+                add(farm);
+            }
+        }
+
+        //the first farm of a bucket keeps its place, and is replaced if a farm worth more falls into the bucket
+        private void add(Farm farm)
+        {
+            double value = bound.getExpectedValue(farm, daysLeft);
+            int cropsValue = (int) (value - farm.getGold() - farm.getGoldCache());
+            BucketKey key = new BucketKey(farm.getNumCrops(),
+                                          getBucket(farm.getGold()),
+                                          getBucket(farm.getGoldCache()),
+                                          getBucket(cropsValue));
+            Integer kept = buckets.putIfAbsent(key, keptFarms.size());
+            if (kept == null)
+            {
+                if (keptFarms.size() == keptValues.length)
+                {
+                    keptValues = Arrays.copyOf(keptValues, 2*keptValues.length);
+                }
+                keptValues[keptFarms.size()] = value;
+                keptFarms.add(farm);
+                return;
+            }
+
+            Farm mergedFarm = farm;
+            if (value > keptValues[kept])
+            {
+                mergedFarm = keptFarms.get(kept);
+                keptFarms.set(kept, farm);
+                keptValues[kept] = value;
+            }
+
+            numMerged++;
+            bestBound = Math.max(bestBound, bound.getUpperBound(mergedFarm, daysLeft));
+        }
+
+        /**
+         * Finishes merging the farms.
+         *
+         * @return The farm expected to be worth the most of every bucket, in the order they were added
+         */
+        public ArrayList<Farm> finish()
+        {
+            if (numMerged > 0)
+            {
+                addMergedFarms(numMerged, bestBound);
+            }
+            return keptFarms;
+        }
+
+        //returns the number of farms added, including the farms that were merged
+        public long getNumAdded()
+        {
+            return numAdded;
+        }
+    }
+
+    private synchronized void addMergedFarms(long numMerged, double bestBound)
+    {
+        numMergedFarms += numMerged;
+        bestMergedBound = Math.max(bestMergedBound, bestBound);
+    }
+
+    /**
+     * Returns the number of seeds to step by when deciding how many seeds of a crop to buy.
+     *
+     * @param buyPrice The buy price of the crop
+     * @param gold The gold left to buy seeds with
+     */
+    public int getSeedStride(int buyPrice, int gold)
+    {
+        int width = Math.max(bucketSize, (int) (gold*bucketRatio));
+        return Math.max(Math.max(1, seedBlockSize), width/buyPrice);
+    }
+
+    //indicates whether a farm investing the given gold may skip some numbers of seeds
+    public boolean isThinned(int gold)
+    {
+        return getSeedStride(leastExpensiveCropValue, gold) > 1;
+    }
+
+    /**
+     * Keeps track of a farm that skipped some numbers of seeds when investing.
+     *
+     * @param permutationBound The most gold any permutation of the farm can end the season with
+     */
+    public synchronized void addThinnedFarm(double permutationBound)
+    {
+        numThinnedFarms++;
+        bestMergedBound = Math.max(bestMergedBound, permutationBound);
+    }
+
+    //returns the bucket of the given gold, combining the fixed and growing buckets
+    private long getBucket(int gold)
+    {
+        long fixedBucket = bucketSize > 1 ? gold/bucketSize : (bucketRatio > 0 ? 0 : gold);
+        long growingBucket = bucketRatio > 0 ? (long) (Math.log1p(gold)/Math.log1p(bucketRatio)) : 0;
+        return (fixedBucket << 32) | growingBucket;
+    }
+
+    public synchronized long getNumMergedFarms()
+    {
+        return numMergedFarms;
+    }
+
+    public synchronized long getNumThinnedFarms()
+    {
+        return numThinnedFarms;
+    }
+
+    //returns the highest upper bound of all the merged farms and skipped seeds
+    public synchronized double getBestMergedBound()
+    {
+        return bestMergedBound;
+    }
+
+    //restores the merged farms and skipped seeds of an earlier run, such as a checkpoint
+    public synchronized void restore(long numMergedFarms, long numThinnedFarms, double bestMergedBound)
+    {
+        this.numMergedFarms = numMergedFarms;
+        this.numThinnedFarms = numThinnedFarms;
+        this.bestMergedBound = bestMergedBound;
+    }
+
+    /**
+     * Returns the most gold a farm may be able to end the season with
+     * beyond the given gold, if it had not been merged or skipped.
+     *
+     * @param bestGold The gold of the most profitable farm that was kept
+     */
+    public synchronized double getGap(int bestGold)
+    {
+        return Math.max(0, bestMergedBound - bestGold);
+    }
+
+    //a farm's number of crops and the buckets of its gold, gold cache and the gold its crops are worth
+    private static class BucketKey
+    {
+        private final int numCrops;
+        private final long gold;
+        private final long goldCache;
+        private final long cropsValue;
+
+        public BucketKey(int numCrops, long gold, long goldCache, long cropsValue)
+        {
+            this.numCrops = numCrops;
+            this.gold = gold;
+            this.goldCache = goldCache;
+            this.cropsValue = cropsValue;
+        }
+
+        @Override
+        public boolean equals(Object other)
+        {
+            if (!(other instanceof BucketKey))
+            {
+                return false;
+            }
+
+            BucketKey key = (BucketKey) other;
+            return this.numCrops == key.numCrops &&
+                   this.gold == key.gold &&
+                   this.goldCache == key.goldCache &&
+                   this.cropsValue == key.cropsValue;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31*(31*(31*numCrops + Long.hashCode(gold)) + Long.hashCode(goldCache)) + Long.hashCode(cropsValue);
+        }
+    }
+}
@@ -1,6 +1,3 @@
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 
@@ -11,7 +8,6 @@ import java.util.ArrayList;
 public class FarmEvent
 {
     private static final int MAX_DAYS = 28;
-    private static PrintWriter writer = null;
     private final int day;
     private final int startingGold;
     private int endingGold;
@@ -35,70 +31,10 @@ public class FarmEvent
 
         if (startingCrops != null)
         {
-            for (CropGroup cropGroup : startingCrops)
-            {
-                this.startingCrops.add(cropGroup.clone());
-            }
+            this.startingCrops.addAll(startingCrops);
         }
     }
 
-    private FarmEvent(int day,
-                      int startingGold,
-                      int endingGold,
-                      int endingGoldCache,
-                      ArrayList<CropGroup> cropsHarvested,
-                      ArrayList<Integer> goldFromHarvestedCrops,
-                      ArrayList<CropGroup> seedsPurchased,
-                      ArrayList<CropGroup> startingCrops)
-    {
-        this.day = day;
-        this.startingGold = startingGold;
-        this.endingGold = endingGold;
-        this.endingGoldCache = endingGoldCache;
-        this.cropsHarvested = new ArrayList<>(cropsHarvested);
-        this.goldFromHarvestedCrops = new ArrayList<>(goldFromHarvestedCrops);
-        this.seedsPurchased = new ArrayList<>(seedsPurchased);
-        this.startingCrops = new ArrayList<>(startingCrops);
-    }
-
-    //creates and returns a deep copy of this FarmEvent
-    @Override
-    public FarmEvent clone()
-    {
-        ArrayList<CropGroup> cropsHarvestedClone = new ArrayList<>();
-        for (CropGroup cropGroup : this.cropsHarvested)
-        {
-            cropsHarvestedClone.add(cropGroup.clone());
-        }
-
-        ArrayList<Integer> goldFromHarvestedCropsClone = new ArrayList<>();
-        for (int gold : this.goldFromHarvestedCrops)
-        {
-            goldFromHarvestedCropsClone.add(gold);
-        }
-
-        ArrayList<CropGroup> seedsPurchasedClone = new ArrayList<>();
-        for (CropGroup cropGroup : this.seedsPurchased)
-        {
-            seedsPurchasedClone.add(cropGroup.clone());
-        }
-
-        ArrayList<CropGroup> startingCropsClone = new ArrayList<>();
-        for (CropGroup cropGroup : this.startingCrops)
-        {
-            startingCropsClone.add(cropGroup.clone());
-        }
-
-        return new FarmEvent(this.day,
-                             this.startingGold,
-                             this.endingGold,
-                             this.endingGoldCache,
-                             cropsHarvestedClone,
-                             goldFromHarvestedCropsClone,
-                             seedsPurchasedClone,
-                             startingCropsClone);
-    }
-
     /**
      * Keeps track of the crops harvested for the day.
      *
@@ -151,20 +87,12 @@ public class FarmEvent
      * This tells you exactly what to do on each day for making the most
      * lucrative farm possible without clogging the output with unnecessary
      * information.
+     *
+     * @param writer The report being written, left open for the next event
      */
     //TODO change this to printAll() and break up prints into easier to manage methods
-    public void printStrategy()
+    public void printStrategy(PrintWriter writer)
     {
-        try
-        {
-            writer = new PrintWriter(new FileOutputStream(new File("log.txt"), true));
-        }
-        catch (FileNotFoundException e)
-        {
-            writer.println("Error, Unable to create or write to log file...");
-            e.printStackTrace();
-        }
-
         writer.println("Day " + day);
         writer.println("\tStarting gold: " + startingGold);
 
@@ -298,7 +226,120 @@ public class FarmEvent
         {
             writer.println("\tNet gold difference for today: " + goldDifference + "\n");
         }
-        writer.close();
+    }
+
+    //the header of the rows written by printCsv()
+    public static void printCsvHeader(PrintWriter writer)
+    {
+        writer.println("farm,day,starting_gold,crops_harvested,gold_from_harvested_crops,seeds_purchased,cost_of_seeds,ending_gold,ending_gold_cache");
+    }
+
+    /**
+     * Outputs this day as a single row of comma separated values.
+     *
+     * Harvested crops and purchased seeds are written as a list of
+     * "number name" entries separated by semicolons.
+     *
+     * @param writer The report being written, left open for the next event
+     * @param farm The rank of the farm this day belongs to
+     */
+    public void printCsv(PrintWriter writer, int farm)
+    {
+        int harvestedGold = 0;
+        for (int gold : goldFromHarvestedCrops)
+        {
+            harvestedGold += gold;
+        }
+
+        int seedCost = 0;
+        for (CropGroup seedPurchased : seedsPurchased)
+        {
+            seedCost += seedPurchased.getBuyPrice()*seedPurchased.getNumber();
+        }
+
+        writer.println(farm + "," + day + "," + startingGold + "," +
+                       csvList(cropsHarvested) + "," + harvestedGold + "," +
+                       csvList(seedsPurchased) + "," + seedCost + "," +
+                       endingGold + "," + endingGoldCache);
+    }
+
+    //joins the crop groups into a single field, quoted if it contains a separator
+    private static String csvList(ArrayList<CropGroup> cropGroups)
+    {
+        StringBuilder field = new StringBuilder();
+        for (CropGroup cropGroup : cropGroups)
+        {
+            if (field.length() > 0)
+            {
+                field.append(';');
+            }
+            field.append(cropGroup.getNumber()).append(' ').append(cropGroup.getName());
+        }
+
+        String value = field.toString();
+        if (value.contains(",") || value.contains("\""))
+        {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+
+    /**
+     * Outputs this day as a single JSON object, without a trailing newline.
+     *
+     * @param writer The report being written, left open for the next event
+     */
+    public void printJson(PrintWriter writer)
+    {
+        writer.print("{\"day\":" + day + ",\"startingGold\":" + startingGold + ",\"startingCrops\":[");
+        for (int i = 0; i < startingCrops.size(); i++)
+        {
+            CropGroup cropGroup = startingCrops.get(i);
+            writer.print((i > 0 ? "," : "") + "{\"crop\":" + jsonString(cropGroup.getName()) +
+                         ",\"number\":" + cropGroup.getNumber() + ",\"age\":" + cropGroup.getAge() +
+                         ",\"regrowing\":" + cropGroup.isFullyGrown() + "}");
+        }
+
+        writer.print("],\"cropsHarvested\":[");
+        for (int i = 0; i < cropsHarvested.size(); i++)
+        {
+            CropGroup cropGroup = cropsHarvested.get(i);
+            writer.print((i > 0 ? "," : "") + "{\"crop\":" + jsonString(cropGroup.getName()) +
+                         ",\"number\":" + cropGroup.getNumber() + ",\"sellPrice\":" + cropGroup.getSellPrice() +
+                         ",\"gold\":" + goldFromHarvestedCrops.get(i) + "}");
+        }
+
+        writer.print("],\"seedsPurchased\":[");
+        for (int i = 0; i < seedsPurchased.size(); i++)
+        {
+            CropGroup cropGroup = seedsPurchased.get(i);
+            writer.print((i > 0 ? "," : "") + "{\"crop\":" + jsonString(cropGroup.getName()) +
+                         ",\"number\":" + cropGroup.getNumber() + ",\"buyPrice\":" + cropGroup.getBuyPrice() + "}");
+        }
+
+        writer.print("],\"endingGold\":" + endingGold + ",\"endingGoldCache\":" + endingGoldCache + "}");
+    }
+
+    //quotes the given text as a JSON string
+    private static String jsonString(String text)
+    {
+        StringBuilder json = new StringBuilder("\"");
+        for (char c : text.toCharArray())
+        {
+            if (c == '"' || c == '\\')
+            {
+                json.append('\\').append(c);
+            }
+            else if (c < ' ')
+            {
+                json.append(String.format("\\u%04x", (int) c));
+            }
+            else
+            {
+                json.append(c);
+            }
+        }
+        return json.append('"').toString();
     }
 
     /**
@@ -0,0 +1,201 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * This class simulates a day for every farm, splitting the farms across threads.
+ *
+ * The farms are split into chunks, every chunk is simulated on its own and the
+ * resulting farms are gathered in the order of the chunks. The result is exactly
+ * the same as simulating the farms one at a time.
+ */
+public class FarmExpansion
+{
+    private static final int CHUNKS_PER_THREAD = 8; //more chunks than threads, so that threads finishing early can take another
+    private static final int MIN_FARMS_PER_CHUNK = 16;
+    private final int numThreads;
+    private final ForkJoinPool pool;
+    private long numPermutations; //the number of farms created by the last simulated day, before any were merged
+
+    public FarmExpansion(int numThreads)
+    {
+        this.numThreads = Math.max(1, numThreads);
+        this.pool = new ForkJoinPool(this.numThreads);
+    }
+
+    /**
+     * Simulates a day for every farm.
+     *
+     * @return Every permutation of every farm, advanced one day
+     */
+    public ArrayList<Farm> simulateDay(ArrayList<Farm> farms)
+    {
+        numPermutations = 0;
+        if (farms.isEmpty())
+        {
+            return new ArrayList<>();
+        }
+
+        int numChunks = Math.min(numThreads*CHUNKS_PER_THREAD, farms.size()/MIN_FARMS_PER_CHUNK);
+        if (numThreads == 1 || numChunks <= 1)
+        {
+            return finish(simulateDay(farms, 0, farms.size()));
+        }
+
+        //split the farms into chunks of nearly equal size
+        SimulationContext context = farms.get(0).getContext();
+        Thread caller = Thread.currentThread();
+        List<Callable<FarmBuckets.Merger>> chunks = new ArrayList<>(numChunks);
+        for (int i = 0; i < numChunks; i++)
+        {
+            int start = (int) ((long) farms.size()*i/numChunks);
+            int end = (int) ((long) farms.size()*(i+1)/numChunks);
+            chunks.add(() -> measure(context, caller, () -> simulateDay(farms, start, end)));
+        }
+
+        //gather the new farms in order
+        ArrayList<Farm> newFarms = new ArrayList<>();
+        try
+        {
+            for (Future<FarmBuckets.Merger> chunk : pool.invokeAll(chunks))
+            {
+                newFarms.addAll(finish(chunk.get()));
+            }
+        }
+        catch (InterruptedException | ExecutionException e)
+        {
+            throw new RuntimeException("Unable to simulate the day for all farms", e);
+        }
+        return newFarms;
+    }
+
+    /**
+     * Simulates the last day of the season for every farm.
+     *
+     * The new farms are offered to the ranking as soon as they are created
+     * instead of being gathered, ordered as if they had been gathered.
+     */
+    public void simulateLastDay(ArrayList<Farm> farms, FarmRanking ranking)
+    {
+        simulateLastDay(farms, 0, ranking);
+    }
+
+    /**
+     * Simulates the last day of the season for some of the farms.
+     *
+     * @param farms The farms, following every farm given in earlier calls
+     * @param firstFarm The number of farms given in earlier calls, so that the new
+     *                  farms are ordered after the new farms of earlier calls
+     * @param ranking Collects the new farms
+     */
+    public void simulateLastDay(ArrayList<Farm> farms, long firstFarm, FarmRanking ranking)
+    {
+        int numChunks = Math.min(numThreads*CHUNKS_PER_THREAD, farms.size()/MIN_FARMS_PER_CHUNK);
+        if (numThreads == 1 || numChunks <= 1)
+        {
+            simulateLastDay(farms, 0, farms.size(), firstFarm, ranking);
+            return;
+        }
+
+        //every chunk collects a ranking of its own, so that the threads never wait for each other
+        SimulationContext context = farms.get(0).getContext();
+        Thread caller = Thread.currentThread();
+        List<Callable<FarmRanking>> chunks = new ArrayList<>(numChunks);
+        for (int i = 0; i < numChunks; i++)
+        {
+            int start = (int) ((long) farms.size()*i/numChunks);
+            int end = (int) ((long) farms.size()*(i+1)/numChunks);
+            chunks.add(() -> measure(context, caller, () -> simulateLastDay(farms, start, end, firstFarm, new FarmRanking(ranking.getMaxFarms()))));
+        }
+
+        try
+        {
+            for (Future<FarmRanking> chunk : pool.invokeAll(chunks))
+            {
+                ranking.merge(chunk.get());
+            }
+        }
+        catch (InterruptedException | ExecutionException e)
+        {
+            throw new RuntimeException("Unable to simulate the day for all farms", e);
+        }
+    }
+
+    //simulates the last day for the farms in the given range, offering the new farms to the given ranking ordered by their farm and permutation
+    private static FarmRanking simulateLastDay(ArrayList<Farm> farms, int start, int end, long firstFarm, FarmRanking ranking)
+    {
+        for (int i = start; i < end; i++)
+        {
+            ArrayList<Farm> newFarms = farms.get(i).simulateDay();
+            for (int j = 0; j < newFarms.size(); j++)
+            {
+                ranking.offer(newFarms.get(j), ((firstFarm + i) << 32) | j);
+            }
+        }
+        return ranking;
+    }
+
+    //simulates a day for the farms in the given range, which is never empty
+    private static FarmBuckets.Merger simulateDay(ArrayList<Farm> farms, int start, int end)
+    {
+        //when approximating, the permutations are merged into gold buckets as soon as they are created
+        SimulationContext context = farms.get(start).getContext();
+        FarmBuckets.Merger newFarms = context.getBuckets().createMerger(context.getDaysRemaining());
+        for (int i = start; i < end; i++)
+        {
+            newFarms.addAll(farms.get(i).simulateDay());
+        }
+        return newFarms;
+    }
+
+    //counts the farms created by a chunk before they were merged, and returns the farms kept
+    private ArrayList<Farm> finish(FarmBuckets.Merger newFarms)
+    {
+        numPermutations += newFarms.getNumAdded();
+        return newFarms.finish();
+    }
+
+    /**
+     * Runs a chunk, adding the bytes it allocated to the context if it ran on a
+     * thread of the pool. The calling thread may run chunks itself while it waits,
+     * and its allocations are already measured as its own.
+     */
+    private static <T> T measure(SimulationContext context, Thread caller, Callable<T> chunk) throws Exception
+    {
+        if (Thread.currentThread() == caller)
+        {
+            return chunk.call();
+        }
+
+        long allocatedBytes = SolverMetrics.getCurrentThreadAllocatedBytes();
+        try
+        {
+            return chunk.call();
+        }
+        finally
+        {
+            if (allocatedBytes >= 0)
+            {
+                context.addAllocatedBytes(SolverMetrics.getCurrentThreadAllocatedBytes() - allocatedBytes);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of farms created by the last call to simulateDay(),
+     * counting the farms that were merged into gold buckets as they were created.
+     */
+    public long getNumPermutations()
+    {
+        return numPermutations;
+    }
+
+    //stops the threads once all days have been simulated
+    public void shutdown()
+    {
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,111 @@
+import java.util.ArrayList;
+import java.util.Collections;
+
+/**
+ * This class records the decision a farm made on a single day.
+ *
+ * Every entry points to the entry of the day before it, forming a chain
+ * back to the starting farm. Entries are never modified once created, so
+ * every farm permutated from the same parent shares that parent's entire
+ * history and only adds a single entry of its own.
+ *
+ * An external simulation writes the entries to a HistoryFile, keeping only
+ * the last entry of every farm in memory.
+ *
+ * Only the decisions are kept here. The detailed FarmEvent of each day
+ * (crops on the farm, crops harvested) is rebuilt from these decisions
+ * for the farms that are actually printed.
+ */
+public class FarmHistory
+{
+    private final FarmHistory previous; //the entry for the day before this one, null for the first day
+    private final int daysRemaining;
+    private final int startingGold;
+    private final int endingGold;
+    private final int endingGoldCache;
+    private final int[] seedsPurchased; //the number of each seed purchased, indexed by crop id. Shared between farms, never modified
+
+    public FarmHistory(FarmHistory previous,
+                       int daysRemaining,
+                       int startingGold,
+                       int endingGold,
+                       int endingGoldCache,
+                       int[] seedsPurchased)
+    {
+        this.previous = previous;
+        this.daysRemaining = daysRemaining;
+        this.startingGold = startingGold;
+        this.endingGold = endingGold;
+        this.endingGoldCache = endingGoldCache;
+        this.seedsPurchased = seedsPurchased;
+    }
+
+    //returns every entry of this chain, ordered from the first day to this day
+    public ArrayList<FarmHistory> toList()
+    {
+        ArrayList<FarmHistory> days = new ArrayList<>();
+        for (FarmHistory entry = this; entry != null; entry = entry.previous)
+        {
+            days.add(entry);
+        }
+        Collections.reverse(days);
+        return days;
+    }
+
+    //returns the number of seeds purchased on this day and every day before it
+    public int getNumSeeds()
+    {
+        int numSeeds = previous == null ? 0 : previous.getNumSeeds();
+        if (seedsPurchased != null)
+        {
+            for (int number : seedsPurchased)
+            {
+                numSeeds += number;
+            }
+        }
+        return numSeeds;
+    }
+
+    //returns the days remaining on the last day crops were harvested up to this day, or -1 if none were harvested
+    public int getLastHarvest()
+    {
+        //the gold cache only ever holds gold from crops harvested on the same day
+        if (endingGoldCache > 0)
+        {
+            return daysRemaining;
+        }
+        return previous == null ? -1 : previous.getLastHarvest();
+    }
+
+    //returns the entry for the day before this one, or null for the first day
+    public FarmHistory getPrevious()
+    {
+        return this.previous;
+    }
+
+    public int getDaysRemaining()
+    {
+        return this.daysRemaining;
+    }
+
+    public int getStartingGold()
+    {
+        return this.startingGold;
+    }
+
+    public int getEndingGold()
+    {
+        return this.endingGold;
+    }
+
+    public int getEndingGoldCache()
+    {
+        return this.endingGoldCache;
+    }
+
+    //returns the seeds purchased on this day, or null if none were purchased
+    public int[] getSeedsPurchased()
+    {
+        return this.seedsPurchased;
+    }
+}
@@ -1,96 +1,110 @@
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Set;
 
+/**
+ * This class calculates every way a farm can spend its gold on seeds.
+ *
+ * Every calculation uses its own instance, so farms can be permutated
+ * on several threads at once.
+ */
 public class FarmPermutation
 {
-    private static ArrayList<Crop> validCrops;
-    private static Set<String> cachedFarms; //all farms that have already been seen
-    private static int maxPlantableSeeds; //the maximum number of seeds that can be planted before hitting energy limits on watering
-    private static ArrayList<FarmProto> farmPermutations; //all unique permutations of the given Farm for the next day
+    private final int[] buyPrices; //the buy price of each valid crop, in descending order
+    private final int[] cropIds; //the crop id of each valid crop
+    private final int maxPlantableSeeds; //the maximum number of seeds that can be planted before hitting energy limits on watering
+    private final ArrayList<FarmProto> farmPermutations; //all unique permutations of the given Farm for the next day
+    private final int numCropTypes; //the number of unique types of crops that can be planted this season
+    private final FarmBuckets buckets; //how many seeds to step by for every crop
+    private final long maxPermutations; //the most permutations the farm may have, 0 for no limit
+    private long numNodes; //the number of calls to permutate(), for the solver metrics
 
-    //calculates all possible permutations of planting seeds for the next day
-    public static ArrayList<FarmProto> calculate(ArrayList<Crop> crops, int numCrops, int gold)
+    private FarmPermutation(SimulationContext context, ArrayList<Crop> crops, int numCrops)
     {
-        validCrops = new ArrayList<>(crops);
-        cachedFarms = new HashSet<>(); //TODO compare static and nonstatic runtime
+        buyPrices = new int[crops.size()];
+        cropIds = new int[crops.size()];
+        for (int i = 0; i < crops.size(); i++)
+        {
+            buyPrices[i] = crops.get(i).getBuyPrice();
+            cropIds[i] = context.getCropId(crops.get(i));
+        }
+        numCropTypes = context.getNumCropTypes();
+        buckets = context.getBuckets();
+        maxPermutations = context.getMaxFarmPermutations();
         farmPermutations = new ArrayList<>();
-        maxPlantableSeeds = Energy.maxWaterableTiles() - numCrops;
-
-        int[] numEachSeed = new int[validCrops.size()]; //the number of seeds to plant for each crop
-        permutate(numEachSeed, gold, 0);
-        return farmPermutations;
+        maxPlantableSeeds = context.getEnergy().maxWaterableTiles() - numCrops;
     }
 
     /**
-     * This function uses a special type of processing known as recursive memoization.
+     * Calculates all possible permutations of planting seeds for the next day.
      *
-     * Every type of farm is generated, investing money in one crop at a time. Every
-     * farm is saved to a cache. If the farm that is generated is already in the cache, it is ignored.
+     * @throws PermutationLimitException If the farm has more permutations than the context allows
+     */
+    public static ArrayList<FarmProto> calculate(SimulationContext context, ArrayList<Crop> crops, int numCrops, int gold)
+    {
+        FarmPermutation permutation = new FarmPermutation(context, crops, numCrops);
+        int[] numEachSeed = new int[crops.size()]; //the number of seeds to plant for each crop
+        permutation.permutate(numEachSeed, 0, gold, 0);
+        context.addPermutationNodes(permutation.numNodes);
+        return permutation.farmPermutations;
+    }
+
+    /**
+     * Every type of farm is generated exactly once, by deciding how many seeds of
+     * each crop to buy one crop at a time, in order. As the crops are sorted by
+     * buy price, the last crop is the least expensive one, and the number of
+     * its seeds is not a choice: the farm must buy as many as it can, because
+     * a farm that could still afford another seed would keep investing.
      *
-     * There are two base cases:
+     * Every farm generated has one of the following properties:
      *      1) The farm can no longer invest in any more crops
      *      2) The player does not have enough energy to water any more squares and
      *         so cannot plant any more crops
      *
      * @param numEachSeed The number of each valid crop to buy and plant
+     * @param crop The index of the crop to decide the number of seeds for
      * @param gold The amount of gold this farm currently has
-     * @param totalNumSeeds The current depth of this tree
+     * @param totalNumSeeds The number of seeds bought so far
      */
-    private static void permutate(int[] numEachSeed, int gold, int totalNumSeeds)
+    private void permutate(int[] numEachSeed, int crop, int gold, int totalNumSeeds)
     {
+        numNodes++;
+        int buyPrice = buyPrices[crop];
+        int maxNumSeeds = Math.min(gold/buyPrice, maxPlantableSeeds - totalNumSeeds);
+
         //base case
-        //you cannot invest money into any more crops
-        //or you are at maximum depth
-        if (gold < validCrops.get(validCrops.size()-1).getBuyPrice()|| totalNumSeeds == maxPlantableSeeds)
+        //spend the remaining gold on the least expensive crop
+        if (crop == buyPrices.length - 1)
         {
-            createFarmProto(numEachSeed, gold);
+            numEachSeed[crop] = maxNumSeeds;
+            createFarmProto(numEachSeed, gold - maxNumSeeds*buyPrice);
         }
         //recursive case
         else
         {
-            //check all possible permutations of crops to invest in
-            for (int i = 0; i < validCrops.size(); i++)
+            //check every number of seeds of this crop we have enough gold and energy for,
+            //or only every bucket of gold's worth of seeds when approximating, always including none
+            int stride = buckets.getSeedStride(buyPrice, gold);
+            for (int numSeeds = maxNumSeeds; numSeeds >= 0; numSeeds = numSeeds > 0 ? Math.max(0, numSeeds - stride) : -1)
             {
-                //only invest in crops that we have enough gold to purchase
-                if (gold >= validCrops.get(i).getBuyPrice())
-                {
-                    numEachSeed[i]++;
-
-                    //only calculate the permutation if it has not been seen before
-                    if (cachedFarms.add(arrayToString(numEachSeed)))
-                    {
-                        permutate(numEachSeed, gold - validCrops.get(i).getBuyPrice(), totalNumSeeds+1);
-                    }
-                    numEachSeed[i]--;
-                }
+                numEachSeed[crop] = numSeeds;
+                permutate(numEachSeed, crop + 1, gold - numSeeds*buyPrice, totalNumSeeds + numSeeds);
             }
         }
+        numEachSeed[crop] = 0;
     }
 
     //creates a prototype farm
-    private static void createFarmProto(int[] numEachSeed, int gold)
+    private void createFarmProto(int[] numEachSeed, int gold)
     {
-        ArrayList<CropGroup> seeds = new ArrayList<>();
+        int[] seeds = new int[numCropTypes];
         for (int i = 0; i < numEachSeed.length; i++)
         {
-            if (numEachSeed[i] > 0)
-            {
-                seeds.add(new CropGroup(validCrops.get(i), numEachSeed[i]));
-            }
+            seeds[cropIds[i]] = numEachSeed[i];
         }
 
         farmPermutations.add(new FarmProto(seeds, gold));
-    }
-
-    //turns an int array into a string
-    private static String arrayToString(int[] array)
-    {
-        String string = "";
-        for (int i = 0; i < array.length; i++)
+        if (maxPermutations > 0 && farmPermutations.size() > maxPermutations)
         {
-            string += array[i] + ",";
+            throw new PermutationLimitException("A farm has more than " + maxPermutations + " permutations");
         }
-        return string;
     }
 }
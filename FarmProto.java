@@ -1,5 +1,3 @@
-import java.util.ArrayList;
-
 /**
  * This class represents a prototype of a Farm.
  *
@@ -8,47 +6,44 @@ import java.util.ArrayList;
  */
 public class FarmProto
 {
-    private ArrayList<CropGroup> newSeeds;
+    private int[] newSeeds; //the number of each seed to plant, indexed by crop id
     private int gold;
 
-    public FarmProto(ArrayList<CropGroup> newCrops, int gold)
+    public FarmProto(int[] newSeeds, int gold)
     {
-        this.newSeeds = new ArrayList<>(newCrops);
+        this.newSeeds = newSeeds;
         this.gold = gold;
     }
 
-    //creates a Farm from this proto using the calling farm's fields
-    public Farm createFarm(ArrayList<CropGroup> currentCrops,
-                           ArrayList<FarmEvent> events,
+    /**
+     * Creates a Farm from this proto using the calling farm's fields.
+     *
+     * The new farm records only today's decision and shares the rest of
+     * its history with the calling farm.
+     */
+    public Farm createFarm(SimulationContext context,
+                           int[] currentCrops,
+                           FarmHistory history,
+                           int daysRemaining,
+                           int startingGold,
                            int remainingGold,
                            int goldCache)
     {
         //update log
-        FarmEvent farmEvent = events.get(events.size()-1);
-        farmEvent.setSeedsPurchased(newSeeds);
-        farmEvent.setEndingGold(gold+remainingGold, goldCache);
-
-        ArrayList<CropGroup> totalCrops = new ArrayList<>();
+        FarmHistory today = new FarmHistory(history, daysRemaining, startingGold, gold+remainingGold, goldCache, newSeeds);
 
-        //add the new seeds to plant
-        for (CropGroup newSeed : newSeeds)
-        {
-            totalCrops.add(newSeed.clone());
-        }
-
-        //add the existing plants
-        for (CropGroup currentCrop : currentCrops)
-        {
-            totalCrops.add(currentCrop.clone());
-        }
+        return new Farm(context, context.plant(currentCrops, newSeeds), gold+remainingGold, goldCache, today);
+    }
 
-        //clone the events
-        ArrayList<FarmEvent> eventsCopy = new ArrayList<>(events.size());
-        for (FarmEvent event : events)
-        {
-            eventsCopy.add(event.clone());
-        }
+    //returns the number of each seed to plant, indexed by crop id
+    public int[] getNewSeeds()
+    {
+        return newSeeds;
+    }
 
-        return new Farm(totalCrops, gold+remainingGold, goldCache, eventsCopy);
+    //returns the gold left after buying the seeds
+    public int getGold()
+    {
+        return gold;
     }
 }
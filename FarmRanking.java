@@ -0,0 +1,172 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.PriorityQueue;
+
+/**
+ * A class for collecting the most profitable farms at the end of the season.
+ *
+ * Farms are offered one at a time as they finish the last day, and only the
+ * best farms seen so far are kept in a bounded heap, so the farms at the end
+ * of the season never have to be held or sorted all at once.
+ *
+ * Farms are ranked by:
+ *      the most gold
+ *      the fewest seeds bought
+ *      the earliest final harvest
+ *      the order they were offered in
+ *
+ * A ranking is only used by one thread at a time. Threads offering farms at the
+ * same time each collect a ranking of their own, which are merged afterwards.
+ */
+public class FarmRanking
+{
+    //orders candidates from the best to the worst
+    private static final Comparator<Candidate> RANKING = (a, b) ->
+    {
+        if (a.gold != b.gold)
+        {
+            return Integer.compare(b.gold, a.gold);
+        }
+        if (a.numSeeds != b.numSeeds)
+        {
+            return Integer.compare(a.numSeeds, b.numSeeds);
+        }
+        if (a.lastHarvest != b.lastHarvest)
+        {
+            return Integer.compare(b.lastHarvest, a.lastHarvest); //more days remaining is earlier
+        }
+        return Long.compare(a.order, b.order);
+    };
+
+    private final int maxFarms; //the most farms kept, 0 for no limit
+    private final PriorityQueue<Candidate> worstFirst;
+    private final IdentityHashMap<FarmHistory, Candidate> candidates; //the kept farms by their history, so that every strategy is only kept once
+    private long numFarms;
+
+    //a farm being ranked, with the values it is ranked by
+    private static class Candidate
+    {
+        private final Farm farm;
+        private final int gold;
+        private final int numSeeds; //the number of seeds bought over the whole season
+        private final int lastHarvest; //the days remaining on the day of the final harvest, -1 if never harvested
+        private final long order;
+
+        public Candidate(Farm farm, long order)
+        {
+            this.farm = farm;
+            this.gold = farm.getGold();
+            this.order = order;
+            this.numSeeds = farm.getHistory() == null ? 0 : farm.getHistory().getNumSeeds();
+            this.lastHarvest = farm.getHistory() == null ? -1 : farm.getHistory().getLastHarvest();
+        }
+    }
+
+    /**
+     * @param maxFarms The most farms kept, 0 for no limit
+     */
+    public FarmRanking(int maxFarms)
+    {
+        this.maxFarms = maxFarms;
+        this.worstFirst = new PriorityQueue<>(RANKING.reversed());
+        this.candidates = new IdentityHashMap<>();
+        this.numFarms = 0;
+    }
+
+    /**
+     * Offers a farm at the end of the season, which is kept if it
+     * ranks among the best farms offered so far.
+     *
+     * @param farm A farm at the end of the season
+     * @param order Breaks the last ties, lower orders rank first
+     */
+    public void offer(Farm farm, long order)
+    {
+        numFarms++;
+
+        //most farms have less gold than every kept farm, so reject them before ranking them any further
+        if (isFull() && farm.getGold() < worstFirst.peek().gold)
+        {
+            return;
+        }
+
+        offer(new Candidate(farm, order));
+    }
+
+    /**
+     * Offers every farm kept by another ranking, along with the order it was
+     * offered in, and counts every farm that was offered to it.
+     */
+    public void merge(FarmRanking other)
+    {
+        numFarms += other.numFarms;
+        for (Candidate candidate : other.worstFirst)
+        {
+            offer(candidate);
+        }
+    }
+
+    private void offer(Candidate candidate)
+    {
+        FarmHistory history = candidate.farm.getHistory();
+        Candidate identical = candidates.get(history);
+        if (identical != null)
+        {
+            //every history is a separate strategy, a farm sharing one is the same strategy offered again
+            if (RANKING.compare(candidate, identical) < 0)
+            {
+                worstFirst.remove(identical);
+                candidates.remove(history);
+                add(candidate);
+            }
+        }
+        else if (!isFull())
+        {
+            add(candidate);
+        }
+        else if (RANKING.compare(candidate, worstFirst.peek()) < 0)
+        {
+            candidates.remove(worstFirst.poll().farm.getHistory());
+            add(candidate);
+        }
+    }
+
+    private void add(Candidate candidate)
+    {
+        worstFirst.add(candidate);
+        candidates.put(candidate.farm.getHistory(), candidate);
+    }
+
+    private boolean isFull()
+    {
+        return maxFarms > 0 && worstFirst.size() >= maxFarms;
+    }
+
+    //returns the most farms kept, 0 for no limit
+    public int getMaxFarms()
+    {
+        return maxFarms;
+    }
+
+    //returns the kept farms, from the best to the worst
+    public ArrayList<Farm> getFarms()
+    {
+        ArrayList<Candidate> ranked = new ArrayList<>(worstFirst);
+        Collections.sort(ranked, RANKING);
+
+        ArrayList<Farm> farms = new ArrayList<>(ranked.size());
+        for (Candidate candidate : ranked)
+        {
+            farms.add(candidate.farm);
+        }
+        return farms;
+    }
+
+    //returns the number of farms offered, including the farms that were not kept
+    public long getNumFarms()
+    {
+        return numFarms;
+    }
+}
@@ -0,0 +1,178 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A class for writing the strategies of farms to a report.
+ *
+ * The report is opened once and buffered, and the farms are written on a
+ * background thread. Rebuilding the events of a farm replays its whole
+ * history, so the thread handing over the farms never waits on the report
+ * unless it gets too far ahead of it.
+ */
+public class FarmReport
+{
+    public enum Format
+    {
+        TEXT, //the strategy of every farm, laid out to be read by the player
+        CSV, //a row for every day of every farm
+        JSON //a line for every farm, with an object for every day
+    }
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_QUEUED_FARMS = 1024; //the most farms waiting to be written at once
+    private static final Entry END = new Entry(null, -1); //marks the end of the farms written
+
+    private final Format format;
+    private final PrintWriter writer;
+    private final BlockingQueue<Entry> queue;
+    private final Thread thread;
+    private int numFarms;
+    private volatile RuntimeException failure; //the first error the background thread ran into, if any
+
+    //a farm waiting to be written, along with its rank in the report
+    private static class Entry
+    {
+        private final Farm farm;
+        private final int rank;
+
+        public Entry(Farm farm, int rank)
+        {
+            this.farm = farm;
+            this.rank = rank;
+        }
+    }
+
+    /**
+     * Opens the report, replacing any previous report with the same file name.
+     *
+     * @param fileName The file to write the report to
+     * @param format The layout of the report
+     * @throws IOException If the file cannot be created or written to
+     */
+    public FarmReport(String fileName, Format format) throws IOException
+    {
+        this.format = format;
+        this.writer = new PrintWriter(new BufferedWriter(new FileWriter(fileName), BUFFER_SIZE));
+        this.queue = new ArrayBlockingQueue<>(MAX_QUEUED_FARMS);
+        this.numFarms = 0;
+
+        if (format == Format.CSV)
+        {
+            FarmEvent.printCsvHeader(writer);
+        }
+
+        this.thread = new Thread(this::writeFarms, "farm-report");
+        this.thread.start();
+    }
+
+    /**
+     * Adds a farm to the end of the report.
+     *
+     * Waits only if too many farms are already waiting to be written.
+     */
+    public void write(Farm farm) throws InterruptedException
+    {
+        queue.put(new Entry(farm, numFarms++));
+    }
+
+    /**
+     * Writes the remaining farms and closes the report.
+     *
+     * @throws IOException If any part of the report could not be written
+     */
+    public void close() throws IOException, InterruptedException
+    {
+        queue.put(END);
+        thread.join();
+
+        writer.close();
+        if (failure != null)
+        {
+            throw new IOException("Unable to write the report", failure);
+        }
+        if (writer.checkError())
+        {
+            throw new IOException("Unable to write the report");
+        }
+    }
+
+    //writes the farms handed over by write() until close() is called, run on the background thread
+    private void writeFarms()
+    {
+        try
+        {
+            for (Entry entry = queue.take(); entry != END; entry = queue.take())
+            {
+                //keep taking farms after an error so that write() never waits forever
+                if (failure == null)
+                {
+                    try
+                    {
+                        writeFarm(entry.farm, entry.rank);
+                    }
+                    catch (RuntimeException e)
+                    {
+                        failure = e;
+                    }
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeFarm(Farm farm, int rank)
+    {
+        switch (format)
+        {
+            case TEXT:
+                for (FarmEvent event : farm.getEvents())
+                {
+                    event.printStrategy(writer);
+                }
+                break;
+            case CSV:
+                for (FarmEvent event : farm.getEvents())
+                {
+                    event.printCsv(writer, rank);
+                }
+                break;
+            case JSON:
+            default:
+                writer.print("{\"farm\":" + rank + ",\"gold\":" + farm.getGold() + ",\"days\":[");
+                boolean first = true;
+                for (FarmEvent event : farm.getEvents())
+                {
+                    if (!first)
+                    {
+                        writer.print(",");
+                    }
+                    event.printJson(writer);
+                    first = false;
+                }
+                writer.println("]}");
+                break;
+        }
+    }
+
+    //returns the usual file name for a report of the given layout
+    public static String getFileName(Format format)
+    {
+        switch (format)
+        {
+            case CSV:
+                return "log.csv";
+            case JSON:
+                return "log.jsonl";
+            case TEXT:
+            default:
+                return "log.txt";
+        }
+    }
+}
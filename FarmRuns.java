@@ -0,0 +1,489 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * This class holds the farms at the end of a single day, spilling them to disk
+ * once there are more of them than fit in memory.
+ *
+ * Farms are added in the order they are created. Once too many farms have been
+ * added, they are sorted by their gold and crops, identical farms are merged,
+ * farms that cannot become the most profitable farm are pruned, and the rest
+ * are written to a run file. The farms are read back by merging all run files
+ * at once, which merges the identical farms of different runs as well.
+ *
+ * The histories of the farms are written to a HistoryFile shared by every day. A
+ * spilled farm is written with a reference to its history records, and every farm
+ * read back only keeps its own entry of the history in memory, so memory grows with
+ * neither the farms of the day before nor the days simulated so far.
+ * Of identical farms, the one added first is kept, just as when the farms are
+ * merged in memory.
+ */
+public class FarmRuns
+{
+    private static final int MAX_OPEN_RUNS = 64; //the most run files merged at once
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    //orders the farms by their gold and crops, and identical farms by the order they were added in
+    private static final Comparator<Entry> ORDER = (a, b) ->
+    {
+        int state = compareState(a.farm, b.farm);
+        return state != 0 ? state : Integer.compare(a.id, b.id);
+    };
+
+    private final SimulationContext context;
+    private final int daysLeft; //the days left before the end of the season on the day these farms finished, -1 for the starting farms
+    private final int maxFarmsInMemory;
+    private final Path directory; //where the run files are written
+    private final HistoryFile histories; //where the histories of the farms are written
+    private final ArrayList<Path> runs;
+    private ArrayList<Entry> buffer; //the farms added since the last run was written
+    private long numMerged;
+    private long numPruned;
+    private long numFarms; //the number of farms kept after merging and pruning
+    private int numAdded; //the number of farms added, which numbers the farms in the order they were added in
+
+    //reading the farms back
+    private PriorityQueue<RunReader> readers;
+    private int nextEntry; //the next farm of the buffer to read when no runs were written
+    private Farm lastFarm; //the last farm read, to merge the identical farms following it
+
+    //a farm along with the order it was added in
+    private static class Entry
+    {
+        private final Farm farm;
+        private final int id;
+
+        public Entry(Farm farm, int id)
+        {
+            this.farm = farm;
+            this.id = id;
+        }
+    }
+
+    /**
+     * @param context The simulation the farms belong to
+     * @param daysLeft The days left before the end of the season on the day the farms finished
+     * @param maxFarmsInMemory The most farms held in memory before they are written to a run file
+     * @param directory Where the run files are written
+     * @param histories Where the histories of the farms are written, shared by the farms of every day
+     */
+    public FarmRuns(SimulationContext context, int daysLeft, int maxFarmsInMemory, Path directory, HistoryFile histories)
+    {
+        this.context = context;
+        this.daysLeft = daysLeft;
+        this.maxFarmsInMemory = Math.max(1, maxFarmsInMemory);
+        this.directory = directory;
+        this.histories = histories;
+        this.runs = new ArrayList<>();
+        this.buffer = new ArrayList<>();
+    }
+
+    /**
+     * Holds the farms the simulation starts with. They have not finished a day
+     * yet, so they are never merged or pruned.
+     */
+    public static FarmRuns startingFarms(SimulationContext context, ArrayList<Farm> farms, HistoryFile histories)
+    {
+        FarmRuns startingFarms = new FarmRuns(context, -1, farms.size(), null, histories);
+        for (Farm farm : farms)
+        {
+            startingFarms.buffer.add(new Entry(farm, startingFarms.numAdded++));
+        }
+        startingFarms.numFarms = farms.size();
+        return startingFarms;
+    }
+
+    /**
+     * Adds farms at the end of the day, writing a run file if there
+     * are now too many farms in memory.
+     */
+    public void add(ArrayList<Farm> farms) throws IOException
+    {
+        for (Farm farm : farms)
+        {
+            buffer.add(new Entry(farm, numAdded++));
+
+            if (buffer.size() >= maxFarmsInMemory)
+            {
+                writeRun(compact(buffer));
+                buffer = new ArrayList<>();
+            }
+        }
+    }
+
+    /**
+     * Finishes adding farms and prepares them for reading.
+     *
+     * If no run file was written, the farms stay in memory. Otherwise the
+     * remaining farms are written as well, and the runs are merged until
+     * there are few enough of them to read all at once.
+     */
+    public void seal() throws IOException
+    {
+        buffer = compact(buffer);
+        nextEntry = 0;
+        if (runs.isEmpty())
+        {
+            return;
+        }
+
+        if (!buffer.isEmpty())
+        {
+            writeRun(buffer);
+        }
+        buffer = new ArrayList<>();
+
+        while (runs.size() > MAX_OPEN_RUNS)
+        {
+            ArrayList<Path> mergedRuns = new ArrayList<>(runs.subList(0, MAX_OPEN_RUNS));
+            runs.subList(0, MAX_OPEN_RUNS).clear();
+            mergeRuns(mergedRuns);
+        }
+
+        readers = new PriorityQueue<>((a, b) -> ORDER.compare(a.entry, b.entry));
+        for (Path run : runs)
+        {
+            RunReader reader = new RunReader(run);
+            if (reader.advance())
+            {
+                readers.add(reader);
+            }
+        }
+    }
+
+    /**
+     * Reads the next farms, in order of their gold and crops.
+     *
+     * Identical farms are merged and farms that can no longer become
+     * the most profitable farm are pruned. The history of every farm
+     * read is written to the history file, keeping only its last entry.
+     *
+     * @param maxFarms The most farms to read
+     * @return The farms read, or an empty list once all farms were read
+     */
+    public ArrayList<Farm> read(int maxFarms) throws IOException
+    {
+        ArrayList<Farm> farms = new ArrayList<>();
+        FarmBound bound = context.getBound();
+        while (farms.size() < maxFarms)
+        {
+            Farm farm;
+            if (readers == null)
+            {
+                if (nextEntry == buffer.size())
+                {
+                    break;
+                }
+                farm = buffer.get(nextEntry++).farm;
+            }
+            else
+            {
+                RunReader reader = readers.poll();
+                if (reader == null)
+                {
+                    break;
+                }
+                farm = reader.entry.farm;
+                if (reader.advance())
+                {
+                    readers.add(reader);
+                }
+                else
+                {
+                    reader.close();
+                }
+            }
+
+            if (daysLeft >= 0)
+            {
+                if (lastFarm != null && compareState(farm, lastFarm) == 0)
+                {
+                    numMerged++;
+                    numFarms--;
+                    continue;
+                }
+                lastFarm = farm;
+
+                //the best known strategy may have improved since the farm was added
+                if (bound.getUpperBound(farm, daysLeft) <= bound.getBestLowerBound() - 0.5)
+                {
+                    numPruned++;
+                    numFarms--;
+                    continue;
+                }
+            }
+            farms.add(new Farm(context, farm.getCrops(), farm.getGold(), farm.getGoldCache(), histories.spill(farm.getHistory())));
+        }
+        return farms;
+    }
+
+    //sorts the farms, merges identical farms and prunes farms that cannot become the most profitable farm
+    private ArrayList<Entry> compact(ArrayList<Entry> entries)
+    {
+        entries.sort(ORDER);
+
+        ArrayList<Farm> farms = new ArrayList<>(entries.size());
+        ArrayList<Entry> uniqueEntries = new ArrayList<>(entries.size());
+        for (Entry entry : entries)
+        {
+            if (uniqueEntries.isEmpty() || compareState(entry.farm, uniqueEntries.get(uniqueEntries.size()-1).farm) != 0)
+            {
+                uniqueEntries.add(entry);
+                farms.add(entry.farm);
+            }
+        }
+        numMerged += entries.size() - uniqueEntries.size();
+
+        //prune() keeps the farms in the order they were given
+        ArrayList<Farm> remainingFarms = context.getBound().prune(farms, daysLeft);
+        ArrayList<Entry> remainingEntries = new ArrayList<>(remainingFarms.size());
+        int farm = 0;
+        for (Entry entry : uniqueEntries)
+        {
+            if (farm < remainingFarms.size() && remainingFarms.get(farm) == entry.farm)
+            {
+                remainingEntries.add(entry);
+                farm++;
+            }
+        }
+        numPruned += uniqueEntries.size() - remainingEntries.size();
+        numFarms += remainingEntries.size();
+        return remainingEntries;
+    }
+
+    //writes sorted farms to a new run file
+    private void writeRun(ArrayList<Entry> entries) throws IOException
+    {
+        Path run = Files.createTempFile(directory, "farms", ".run");
+        runs.add(run);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), BUFFER_SIZE)))
+        {
+            for (Entry entry : entries)
+            {
+                writeEntry(out, entry);
+            }
+        }
+    }
+
+    //merges the given runs into a single run at the end of the list of runs
+    private void mergeRuns(ArrayList<Path> mergedRuns) throws IOException
+    {
+        PriorityQueue<RunReader> mergeReaders = new PriorityQueue<>((a, b) -> ORDER.compare(a.entry, b.entry));
+        for (Path run : mergedRuns)
+        {
+            RunReader reader = new RunReader(run);
+            if (reader.advance())
+            {
+                mergeReaders.add(reader);
+            }
+        }
+
+        Path run = Files.createTempFile(directory, "farms", ".run");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), BUFFER_SIZE)))
+        {
+            Farm last = null;
+            while (!mergeReaders.isEmpty())
+            {
+                RunReader reader = mergeReaders.poll();
+                if (last == null || compareState(reader.entry.farm, last) != 0)
+                {
+                    writeEntry(out, reader.entry);
+                    last = reader.entry.farm;
+                }
+                else
+                {
+                    numMerged++;
+                    numFarms--;
+                }
+
+                if (reader.advance())
+                {
+                    mergeReaders.add(reader);
+                }
+                else
+                {
+                    reader.close();
+                }
+            }
+        }
+
+        for (Path mergedRun : mergedRuns)
+        {
+            Files.delete(mergedRun);
+        }
+        runs.add(run);
+    }
+
+    /**
+     * Writes a single farm along with a reference to its history:
+     *
+     *      int id, int gold, int gold cache, crops, history reference
+     */
+    private void writeEntry(DataOutputStream out, Entry entry) throws IOException
+    {
+        Farm farm = entry.farm;
+        out.writeInt(entry.id);
+        out.writeInt(farm.getGold());
+        out.writeInt(farm.getGoldCache());
+        writeCounts(out, farm.getCrops());
+        histories.writeReference(out, farm.getHistory());
+    }
+
+    /**
+     * Writes only the filled slots of the given counts, or -1 if there are no counts.
+     * Most slots of a farm's crops and most seeds are empty.
+     *
+     * @return The number of bytes written
+     */
+    static int writeCounts(DataOutputStream out, int[] counts) throws IOException
+    {
+        if (counts == null)
+        {
+            out.writeShort(-1);
+            return Short.BYTES;
+        }
+
+        int numFilledSlots = 0;
+        for (int count : counts)
+        {
+            if (count > 0)
+            {
+                numFilledSlots++;
+            }
+        }
+
+        out.writeShort(numFilledSlots);
+        for (int i = 0; i < counts.length; i++)
+        {
+            if (counts[i] > 0)
+            {
+                out.writeShort(i);
+                out.writeInt(counts[i]);
+            }
+        }
+        return Short.BYTES + numFilledSlots*(Short.BYTES + Integer.BYTES);
+    }
+
+    //reads counts written by writeCounts()
+    static int[] readCounts(DataInput in, int length) throws IOException
+    {
+        int numFilledSlots = in.readShort();
+        if (numFilledSlots == -1)
+        {
+            return null;
+        }
+
+        int[] counts = new int[length];
+        for (int i = 0; i < numFilledSlots; i++)
+        {
+            int slot = in.readShort();
+            counts[slot] = in.readInt();
+        }
+        return counts;
+    }
+
+    //reads the farms of a run file one at a time
+    private class RunReader
+    {
+        private final DataInputStream in;
+        private Entry entry; //the farm last read
+
+        public RunReader(Path run) throws IOException
+        {
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), BUFFER_SIZE));
+        }
+
+        //reads the next farm, returns false at the end of the run
+        public boolean advance() throws IOException
+        {
+            int id;
+            try
+            {
+                id = in.readInt();
+            }
+            catch (EOFException e)
+            {
+                entry = null;
+                return false;
+            }
+
+            int gold = in.readInt();
+            int goldCache = in.readInt();
+            int[] crops = readCounts(in, context.getNumSlots());
+            FarmHistory history = histories.readReference(in, context.getNumCropTypes());
+
+            entry = new Entry(new Farm(context, crops, gold, goldCache, history), id);
+            return true;
+        }
+
+        public void close() throws IOException
+        {
+            in.close();
+        }
+    }
+
+    //compares farms by their gold, their gold cache and then their crops
+    private static int compareState(Farm a, Farm b)
+    {
+        if (a.getGold() != b.getGold())
+        {
+            return Integer.compare(a.getGold(), b.getGold());
+        }
+        if (a.getGoldCache() != b.getGoldCache())
+        {
+            return Integer.compare(a.getGoldCache(), b.getGoldCache());
+        }
+        return Arrays.compare(a.getCrops(), b.getCrops());
+    }
+
+    //deletes the run files once all farms were read
+    public void close() throws IOException
+    {
+        if (readers != null)
+        {
+            for (RunReader reader : readers)
+            {
+                reader.close();
+            }
+        }
+        for (Path run : runs)
+        {
+            Files.deleteIfExists(run);
+        }
+    }
+
+    //returns the number of identical farms merged so far
+    public long getNumMerged()
+    {
+        return numMerged;
+    }
+
+    //returns the number of farms pruned so far
+    public long getNumPruned()
+    {
+        return numPruned;
+    }
+
+    //returns the number of farms that have not been merged or pruned so far
+    public long getNumFarms()
+    {
+        return numFarms;
+    }
+
+    //returns whether any farms were written to a run file
+    public boolean isSpilled()
+    {
+        return !runs.isEmpty();
+    }
+}
@@ -0,0 +1,328 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A server that stays running and solves scenarios sent to it over HTTP on the
+ * local machine, so that every query does not start a new process.
+ *
+ * A scenario is solved with a request such as:
+ *
+ *      GET /solve?day=1&season=SUMMER&gold=500&stardrops=0&wateringCan=COPPER&proficiency=0
+ *
+ * and answered with the same line of JSON as FarmBatch writes for it. GET /stats
+ * answers with the number of requests solved, rejected and over the limits so far.
+ *
+ * Scenarios are grouped the same way as in FarmBatch, and every group keeps its
+ * context and search for as long as the server runs, so a request shaped like an
+ * earlier one reuses the permutations and states already calculated for it.
+ * A search can only solve one scenario at once, so requests of the same group
+ * queue up behind each other, while requests of different groups are solved at
+ * once on a fixed number of threads. A waiting request never holds a thread: the
+ * group is handed back to the pool after every request it solves.
+ *
+ * Once too many requests are being solved or waiting to be solved, new requests
+ * are answered with 503 Service Unavailable at once instead of piling up. Requests
+ * with more gold than the server allows are answered with 400 Bad Request. Even a
+ * request within that gold can explode into more permutations than fit in memory,
+ * so every search is limited in the permutations it may calculate, and a request
+ * that goes over the limit is answered with 422 Unprocessable Entity. Running out
+ * of memory anyway stops the whole server, as no search is safe to keep after it.
+ */
+public class FarmServer
+{
+    private final long maxCachedPermutations; //the most permutations kept in each group's memoization cache, 0 for no limit
+    private final long maxSolvedStates; //the most states kept in each group's transposition table, 0 for no limit
+    private final int maxGold; //the most gold a request may start with
+    private final long maxPermutations; //the most permutations a single request may calculate, 0 for no limit
+    private final long maxFarmPermutations; //the most permutations of any single farm of a request, 0 for no limit
+    private final HttpServer server;
+    private final ExecutorService pool; //solves the requests
+    private final int maxRequests; //the most requests being solved or waiting to be solved at once
+    private final Semaphore inFlight; //a permit for every request being solved or waiting to be solved
+    private final ConcurrentHashMap<String, Group> groups; //the search of every group, kept between requests
+    private int numRequests; //numbers the scenarios accepted, for the results. Only used on the server's own thread
+    private final AtomicLong numSolved;
+    private final AtomicLong numRejected;
+    private final AtomicLong numLimited; //the requests that went over the permutation limits
+
+    //a request waiting to be solved
+    private static class Request
+    {
+        private final HttpExchange exchange;
+        private final FarmBatch.Scenario scenario;
+
+        public Request(HttpExchange exchange, FarmBatch.Scenario scenario)
+        {
+            this.exchange = exchange;
+            this.scenario = scenario;
+        }
+    }
+
+    //the search of a group and the requests waiting for it, which are solved one at a time
+    private class Group
+    {
+        private final ArrayDeque<Request> waiting; //guarded by the group
+        private boolean running; //whether the group is on the pool, guarded by the group
+        private FarmSolver solver; //created by the first request, only used by the request being solved
+
+        public Group()
+        {
+            this.waiting = new ArrayDeque<>();
+        }
+
+        //queues a request, handing the group to the pool unless it is already there
+        public void add(Request request)
+        {
+            synchronized (this)
+            {
+                waiting.add(request);
+                if (running)
+                {
+                    return;
+                }
+                running = true;
+            }
+            pool.execute(this::solveNext);
+        }
+
+        //solves the oldest waiting request, then hands the group back to the pool if more are waiting, so other groups get their turn
+        private void solveNext()
+        {
+            Request request;
+            synchronized (this)
+            {
+                request = waiting.poll();
+            }
+            solve(this, request);
+
+            synchronized (this)
+            {
+                if (waiting.isEmpty())
+                {
+                    running = false;
+                    return;
+                }
+            }
+            pool.execute(this::solveNext);
+        }
+    }
+
+    /**
+     * Starts the server on the loopback address.
+     *
+     * @param port The port to listen on
+     * @param numThreads The number of requests solved at once
+     * @param maxRequests The most requests being solved or waiting to be solved at once
+     * @param maxCachedPermutations The most permutations kept in each group's memoization cache, 0 for no limit
+     * @param maxSolvedStates The most states kept in each group's transposition table, 0 for no limit
+     * @param maxGold The most gold a request may start with
+     * @param maxPermutations The most permutations a single request may calculate, 0 for no limit
+     * @param maxFarmPermutations The most permutations of any single farm of a request, 0 for no limit
+     * @throws IOException If the server cannot listen on the port
+     */
+    public FarmServer(int port, int numThreads, int maxRequests, long maxCachedPermutations, long maxSolvedStates,
+                      int maxGold, long maxPermutations, long maxFarmPermutations) throws IOException
+    {
+        this.maxCachedPermutations = maxCachedPermutations;
+        this.maxSolvedStates = maxSolvedStates;
+        this.maxGold = maxGold;
+        this.maxPermutations = maxPermutations;
+        this.maxFarmPermutations = maxFarmPermutations;
+        this.pool = Executors.newFixedThreadPool(Math.max(1, numThreads));
+        this.maxRequests = Math.max(1, maxRequests);
+        this.inFlight = new Semaphore(this.maxRequests);
+        this.groups = new ConcurrentHashMap<>();
+        this.numRequests = 0;
+        this.numSolved = new AtomicLong();
+        this.numRejected = new AtomicLong();
+        this.numLimited = new AtomicLong();
+
+        //requests are only accepted and handed over on the server's own thread, never solved on it
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.server.createContext("/solve", this::handleSolve);
+        this.server.createContext("/stats", this::handleStats);
+        this.server.start();
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        //editable variables
+        final int port = 8080;
+        final int numThreads = Runtime.getRuntime().availableProcessors();
+        final int maxRequests = 256; //requests beyond this many are rejected until some finish
+        final long maxCachedPermutations = 2000000; //0 for no limit
+        final long maxSolvedStates = 2000000; //0 for no limit, which lets the tables of a long running server grow without end
+        final int maxGold = 2000; //requests starting with more gold are rejected
+        final long maxPermutations = 10000000; //requests calculating more permutations are given up on, 0 for no limit
+        final long maxFarmPermutations = 1000000; //requests where a single farm has more permutations are given up on, 0 for no limit
+
+        new FarmServer(port, numThreads, maxRequests, maxCachedPermutations, maxSolvedStates, maxGold,
+                       maxPermutations, maxFarmPermutations);
+        System.out.println("Listening on http://localhost:" + port + "/solve");
+    }
+
+    //hands the request over to be solved, or rejects it if too many requests are in flight
+    private void handleSolve(HttpExchange exchange) throws IOException
+    {
+        if (!exchange.getRequestMethod().equals("GET"))
+        {
+            respond(exchange, 405, "{\"error\":\"only GET is supported\"}");
+            return;
+        }
+
+        FarmBatch.Scenario scenario;
+        try
+        {
+            HashMap<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            scenario = FarmBatch.Scenario.parse(numRequests, new String[] {query.get("day"),
+                                                                                             query.get("season"),
+                                                                                             query.get("gold"),
+                                                                                             query.getOrDefault("stardrops", "0"),
+                                                                                             query.getOrDefault("wateringCan", "BASIC"),
+                                                                                             query.getOrDefault("proficiency", "0")});
+        }
+        catch (IllegalArgumentException | NullPointerException e)
+        {
+            respond(exchange, 400, "{\"error\":\"day, season and gold are required and must be valid\"}");
+            return;
+        }
+        if (scenario.getGold() < 0 || scenario.getGold() > maxGold)
+        {
+            respond(exchange, 400, "{\"error\":\"gold must be from 0 to " + maxGold + "\"}");
+            return;
+        }
+
+        if (!inFlight.tryAcquire())
+        {
+            numRejected.incrementAndGet();
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            respond(exchange, 503, "{\"error\":\"too many requests in flight\"}");
+            return;
+        }
+        numRequests++;
+        groups.computeIfAbsent(scenario.getGroupKey(), key -> new Group()).add(new Request(exchange, scenario));
+    }
+
+    //solves a request of the group and answers it, run on the pool
+    private void solve(Group group, Request request)
+    {
+        FarmBatch.Scenario scenario = request.scenario;
+        try
+        {
+            int status;
+            String result;
+            try
+            {
+                if (group.solver == null)
+                {
+                    group.solver = FarmBatch.createSolver(scenario, maxCachedPermutations, maxSolvedStates);
+                }
+                Farm farm = group.solver.solve(scenario.getGold(), scenario.getDaysLeft(), maxPermutations, maxFarmPermutations);
+                result = FarmBatch.toJson(scenario, farm);
+                status = 200;
+                numSolved.incrementAndGet();
+            }
+            //the search is left as it was, so the group keeps it
+            catch (PermutationLimitException e)
+            {
+                result = "{\"error\":\"the scenario is too large to solve: " + e.getMessage() + "\"}";
+                status = 422;
+                numLimited.incrementAndGet();
+            }
+            catch (Exception e)
+            {
+                e.printStackTrace();
+
+                //a search stopped halfway may hold a broken state, so the group starts over with a new one
+                group.solver = null;
+                result = "{\"error\":\"unable to solve the scenario\"}";
+                status = 500;
+            }
+            //the memory or stack may be left broken anywhere, so the server stops instead of answering on
+            catch (VirtualMachineError e)
+            {
+                e.printStackTrace();
+                Runtime.getRuntime().halt(1);
+                return;
+            }
+
+            respond(request.exchange, status, result);
+        }
+        catch (IOException e)
+        {
+            request.exchange.close();
+        }
+        finally
+        {
+            inFlight.release();
+        }
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException
+    {
+        respond(exchange, 200, "{\"solved\":" + numSolved.get() +
+                               ",\"rejected\":" + numRejected.get() +
+                               ",\"limited\":" + numLimited.get() +
+                               ",\"inFlight\":" + getNumInFlight() +
+                               ",\"groups\":" + groups.size() + "}");
+    }
+
+    //returns the number of requests being solved or waiting to be solved
+    public int getNumInFlight()
+    {
+        return maxRequests - inFlight.availablePermits();
+    }
+
+    //splits the query of a request into its parameters
+    private static HashMap<String, String> parseQuery(String rawQuery)
+    {
+        HashMap<String, String> query = new HashMap<>();
+        if (rawQuery == null)
+        {
+            return query;
+        }
+
+        for (String parameter : rawQuery.split("&"))
+        {
+            int equals = parameter.indexOf('=');
+            if (equals > 0)
+            {
+                query.put(URLDecoder.decode(parameter.substring(0, equals), StandardCharsets.UTF_8),
+                          URLDecoder.decode(parameter.substring(equals + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return query;
+    }
+
+    //answers a request with the given line of JSON
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException
+    {
+        byte[] body = (json + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody())
+        {
+            out.write(body);
+        }
+    }
+
+    //stops accepting requests, waiting at most the given seconds for the requests being answered
+    public void stop(int delay)
+    {
+        server.stop(delay);
+        pool.shutdown();
+    }
+}
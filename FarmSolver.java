@@ -0,0 +1,277 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+
+/**
+ * This class finds the most profitable farm with a depth-first search, as an
+ * alternative to simulating every farm of a day at once.
+ *
+ * The most gold a farm can end the season with only depends on its gold, gold
+ * cache and crops at the beginning of a day, not on how it got there. So the
+ * search calculates this value once for every such state, recursively from the
+ * last day of the season, and keeps it in a transposition table for every day.
+ * Farms that reach the same state by different paths share the same future.
+ *
+ * Only one path of farms is ever simulated at once, so the memory used is bounded
+ * by the transposition table and the days remaining rather than by every farm of
+ * a day. The table can be limited, in which case states that do not fit are
+ * simply calculated again whenever they are reached.
+ *
+ * The days are not simulated in order, so a context must not be shared with any
+ * other search while it is being used.
+ *
+ * The player's energy can be changed on the context between searches, and the
+ * table is kept. The tiles the player can water only change the permutations of
+ * a farm that could buy more seeds than it has tiles left, so every state is kept
+ * along with the range of waterable tiles that give its whole search the same
+ * permutations, and is reused by any search whose tiles are in that range.
+ *
+ * A single search can be limited to a number of permutations, both in total and
+ * for any single farm, so that a scenario too large to solve is given up on before
+ * it fills the memory. The states solved before giving up stay in the table, as
+ * every one of them was solved completely.
+ */
+public class FarmSolver
+{
+    private final SimulationContext context;
+    private final FarmBound bound;
+    private final ArrayList<HashMap<Farm, SolvedState>> solvedStates; //the most gold every state can end the season with, indexed by days remaining
+    private final long maxStates; //the most states kept in the transposition table, 0 for no limit
+    private long numStates;
+    private long numHits;
+    private long maxPermutations; //the most permutations the current search may simulate, 0 for no limit
+    private long numPermutations; //the permutations simulated by the current search
+
+    //the most gold a state can end the season with, for any number of waterable tiles in a range
+    private static class SolvedState
+    {
+        private final int gold;
+        private final int minTiles;
+        private final int maxTiles;
+
+        public SolvedState(int gold, int minTiles, int maxTiles)
+        {
+            this.gold = gold;
+            this.minTiles = minTiles;
+            this.maxTiles = maxTiles;
+        }
+
+        public boolean holdsFor(int tiles)
+        {
+            return minTiles <= tiles && tiles <= maxTiles;
+        }
+    }
+
+    /**
+     * @param context The simulation, on its first day
+     * @param maxStates The most states kept in the transposition table, 0 for no limit
+     */
+    public FarmSolver(SimulationContext context, long maxStates)
+    {
+        this.context = context;
+        this.bound = context.getBound();
+        this.maxStates = maxStates;
+        this.solvedStates = new ArrayList<>();
+        for (int day = 0; day <= context.getDaysRemaining(); day++)
+        {
+            solvedStates.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * Finds the most profitable farm at the end of the season.
+     *
+     * The most gold is calculated first, then the farm is rebuilt by following,
+     * on every day, the first permutation that can still end the season with it.
+     *
+     * @param gold The gold the player starts with
+     * @return The most profitable farm, with the history of every day
+     */
+    public Farm solve(int gold)
+    {
+        return solve(gold, context.getDaysRemaining());
+    }
+
+    /**
+     * Finds the most profitable farm at the end of the season, starting on a later day.
+     *
+     * The most gold a state can end the season with does not depend on the day the
+     * search started, so searches starting on different days with different gold
+     * share the same transposition table.
+     *
+     * @param gold The gold the player starts with
+     * @param daysLeft The days left before the end of the season on the day the player starts,
+     *                 at most the days remaining of the context when the solver was created
+     * @return The most profitable farm, with the history of every day
+     */
+    public Farm solve(int gold, int daysLeft)
+    {
+        return solve(gold, daysLeft, 0, 0);
+    }
+
+    /**
+     * Finds the most profitable farm at the end of the season, starting on a later day,
+     * giving up once the search has simulated too many permutations.
+     *
+     * @param gold The gold the player starts with
+     * @param daysLeft The days left before the end of the season on the day the player starts,
+     *                 at most the days remaining of the context when the solver was created
+     * @param maxPermutations The most permutations simulated, 0 for no limit
+     * @param maxFarmPermutations The most permutations of any single farm, 0 for no limit
+     * @return The most profitable farm, with the history of every day
+     * @throws PermutationLimitException If the search calculated more permutations than allowed
+     */
+    public Farm solve(int gold, int daysLeft, long maxPermutations, long maxFarmPermutations)
+    {
+        int contextDaysLeft = context.getDaysRemaining();
+        this.maxPermutations = maxPermutations;
+        this.numPermutations = 0;
+        context.setMaxFarmPermutations(maxFarmPermutations);
+        try
+        {
+            Farm farm = new Farm(context, null, gold, 0, null);
+            int mostGold = getMostGold(farm, daysLeft).gold;
+
+            for (int day = daysLeft; day >= 0; day--)
+            {
+                for (Farm newFarm : getPermutations(farm, day))
+                {
+                    if ((day == 0 ? newFarm.getGold() : getMostGold(newFarm, day - 1).gold) == mostGold)
+                    {
+                        farm = newFarm;
+                        break;
+                    }
+                }
+            }
+            return farm;
+        }
+        finally
+        {
+            context.setDaysRemaining(contextDaysLeft);
+            context.setMaxFarmPermutations(0);
+        }
+    }
+
+    /**
+     * Returns the most gold the given farm can end the season with.
+     *
+     * The permutations are searched in descending order of their upper bounds,
+     * and the search stops once no other permutation can end the season with
+     * more gold than the best one so far. The upper bounds do not depend on the
+     * player's energy, so neither does which permutations are searched, as long
+     * as every permutation searched ends with the same gold.
+     *
+     * @param farm A farm at the beginning of a day, which is left unchanged
+     * @param daysLeft The days left before the end of the season on that day
+     * @return The most gold, along with the range of waterable tiles it holds for
+     */
+    private SolvedState getMostGold(Farm farm, int daysLeft)
+    {
+        int tiles = context.getEnergy().maxWaterableTiles();
+        HashMap<Farm, SolvedState> solved = solvedStates.get(daysLeft);
+        SolvedState solvedState = solved.get(farm);
+        if (solvedState != null && solvedState.holdsFor(tiles))
+        {
+            numHits++;
+            return solvedState;
+        }
+
+        //the history does not change the future, so it is not carried over
+        Farm state = new Farm(context, farm.getCrops().clone(), farm.getGold(), farm.getGoldCache(), null);
+        Farm copy = new Farm(context, farm.getCrops().clone(), farm.getGold(), farm.getGoldCache(), null);
+        ArrayList<Farm> newFarms = getPermutations(copy, daysLeft);
+
+        //the copy was harvested, so it holds the gold and crops the permutations were bought with
+        int minTiles = 0;
+        int maxTiles = Integer.MAX_VALUE;
+        if (!context.getCropTypes().isEmpty() && copy.getGold() >= context.getLeastExpensiveCropValue())
+        {
+            int numCrops = copy.getNumCrops();
+            int unlimitedTiles = numCrops + (copy.getGold() - copy.getGold() % context.getGoldUnit())/context.getLeastExpensiveCropValue();
+            if (tiles >= unlimitedTiles)
+            {
+                minTiles = unlimitedTiles;
+            }
+            else if (tiles <= numCrops)
+            {
+                maxTiles = numCrops;
+            }
+            else
+            {
+                minTiles = tiles;
+                maxTiles = tiles;
+            }
+        }
+
+        int mostGold = 0;
+        if (daysLeft == 0)
+        {
+            for (Farm newFarm : newFarms)
+            {
+                mostGold = Math.max(mostGold, newFarm.getGold());
+            }
+        }
+        else
+        {
+            double[] upperBounds = new double[newFarms.size()];
+            ArrayList<Integer> order = new ArrayList<>(newFarms.size());
+            for (int i = 0; i < newFarms.size(); i++)
+            {
+                upperBounds[i] = bound.getUpperBound(newFarms.get(i), daysLeft);
+                order.add(i);
+            }
+            order.sort((a, b) -> Double.compare(upperBounds[b], upperBounds[a]));
+
+            for (int i : order)
+            {
+                //gold is whole, so allow for rounding errors in the upper bounds
+                if (upperBounds[i] <= mostGold - 0.5)
+                {
+                    break;
+                }
+                SolvedState newState = getMostGold(newFarms.get(i), daysLeft - 1);
+                mostGold = Math.max(mostGold, newState.gold);
+                minTiles = Math.max(minTiles, newState.minTiles);
+                maxTiles = Math.min(maxTiles, newState.maxTiles);
+            }
+        }
+
+        //a state solved for other tiles is replaced, as the newest search is the most likely to reach it again
+        solvedState = new SolvedState(mostGold, minTiles, maxTiles);
+        if (solved.containsKey(state))
+        {
+            solved.put(state, solvedState);
+        }
+        else if (maxStates == 0 || numStates < maxStates)
+        {
+            solved.put(state, solvedState);
+            numStates++;
+        }
+        return solvedState;
+    }
+
+    //simulates the given day for the given farm, merging permutations that reached the same gold and crops
+    private ArrayList<Farm> getPermutations(Farm farm, int daysLeft)
+    {
+        context.setDaysRemaining(daysLeft);
+        ArrayList<Farm> newFarms = farm.simulateDay();
+        numPermutations += newFarms.size();
+        if (maxPermutations > 0 && numPermutations > maxPermutations)
+        {
+            throw new PermutationLimitException("The search simulated more than " + maxPermutations + " permutations");
+        }
+        return new ArrayList<>(new LinkedHashSet<>(newFarms));
+    }
+
+    //returns the number of states kept in the transposition table
+    public long getNumStates()
+    {
+        return numStates;
+    }
+
+    //returns the number of times a state was found in the transposition table instead of being calculated
+    public long getNumHits()
+    {
+        return numHits;
+    }
+}
@@ -0,0 +1,34 @@
+//the fertilizers that raise the quality of crops, which are bought and placed along with the seeds
+public enum Fertilizer
+{
+    NONE    (0, 0,   null),
+    BASIC   (1, 100, "Basic Fertilizer"),
+    QUALITY (2, 150, "Quality Fertilizer");
+//  DELUXE  (3, 0,   "Deluxe Fertilizer"); //TODO only sold for Qi gems, and not for gold
+
+    private final int level; //the quality level of the fertilizer, 0 for none
+    private final int buyPrice;
+    private final String name;
+
+    private Fertilizer(int level, int buyPrice, String name)
+    {
+        this.level = level;
+        this.buyPrice = buyPrice;
+        this.name = name;
+    }
+
+    public int getLevel()
+    {
+        return level;
+    }
+
+    public int getBuyPrice()
+    {
+        return buyPrice;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+}
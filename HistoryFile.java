@@ -0,0 +1,199 @@
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+/**
+ * This class holds the history of the farms of an external simulation on disk,
+ * so that the histories of past days never have to stay in memory.
+ *
+ * Every entry of the history is written once as a record, found by its offset
+ * in the file, that refers to the record of the day before it:
+ *
+ *      long previous record (-1 for none), int days remaining, int starting gold,
+ *      int ending gold, int ending gold cache, seeds
+ *
+ * A spilled entry keeps its own decision in memory but none of the entries
+ * before it, only the seed count and final harvest of the whole chain that the
+ * farms are ranked by. The full chains are only read back for the farms that
+ * are actually printed. Records of farms that were merged or pruned after being
+ * spilled stay in the file, as no record is ever rewritten.
+ */
+public class HistoryFile
+{
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Path path;
+    private final DataOutputStream out;
+    private long size; //the bytes written so far, which is the offset of the next record
+
+    //an entry of the history whose earlier entries are only on disk
+    private static class SpilledHistory extends FarmHistory
+    {
+        private final long id; //the offset of this entry's record
+        private final int numSeeds; //the number of seeds purchased on this day and every day before it
+        private final int lastHarvest; //the days remaining on the last day crops were harvested up to this day, -1 for none
+
+        public SpilledHistory(FarmHistory history, long id, int numSeeds, int lastHarvest)
+        {
+            super(null,
+                  history.getDaysRemaining(),
+                  history.getStartingGold(),
+                  history.getEndingGold(),
+                  history.getEndingGoldCache(),
+                  history.getSeedsPurchased());
+            this.id = id;
+            this.numSeeds = numSeeds;
+            this.lastHarvest = lastHarvest;
+        }
+
+        @Override
+        public int getNumSeeds()
+        {
+            return numSeeds;
+        }
+
+        @Override
+        public int getLastHarvest()
+        {
+            return lastHarvest;
+        }
+    }
+
+    /**
+     * @param directory Where the file is written
+     * @throws IOException If the file cannot be created
+     */
+    public HistoryFile(Path directory) throws IOException
+    {
+        this.path = Files.createTempFile(directory, "history", ".bin");
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), BUFFER_SIZE));
+        this.size = 0;
+    }
+
+    /**
+     * Writes the entries of the given history that are not on disk yet.
+     *
+     * @return The last entry of the history, holding none of the entries before it, or null for no history
+     */
+    public FarmHistory spill(FarmHistory history) throws IOException
+    {
+        if (history == null || history instanceof SpilledHistory)
+        {
+            return history;
+        }
+
+        SpilledHistory previous = (SpilledHistory) spill(history.getPrevious());
+        long id = size;
+        out.writeLong(previous == null ? -1 : previous.id);
+        out.writeInt(history.getDaysRemaining());
+        out.writeInt(history.getStartingGold());
+        out.writeInt(history.getEndingGold());
+        out.writeInt(history.getEndingGoldCache());
+        size += Long.BYTES + 4*Integer.BYTES + FarmRuns.writeCounts(out, history.getSeedsPurchased());
+
+        return new SpilledHistory(history, id, history.getNumSeeds(), history.getLastHarvest());
+    }
+
+    /**
+     * Writes the given history along with a farm, as a reference to its records.
+     * The history is spilled first if it was not yet.
+     *
+     *      long record, int seeds over the whole chain, int last harvest,
+     *      int days remaining, int starting gold, int ending gold, int ending gold cache, seeds
+     */
+    public void writeReference(DataOutputStream out, FarmHistory history) throws IOException
+    {
+        SpilledHistory spilled = (SpilledHistory) spill(history);
+        out.writeLong(spilled.id);
+        out.writeInt(spilled.numSeeds);
+        out.writeInt(spilled.lastHarvest);
+        out.writeInt(spilled.getDaysRemaining());
+        out.writeInt(spilled.getStartingGold());
+        out.writeInt(spilled.getEndingGold());
+        out.writeInt(spilled.getEndingGoldCache());
+        FarmRuns.writeCounts(out, spilled.getSeedsPurchased());
+    }
+
+    //reads a history written by writeReference()
+    public FarmHistory readReference(DataInput in, int numCropTypes) throws IOException
+    {
+        long id = in.readLong();
+        int numSeeds = in.readInt();
+        int lastHarvest = in.readInt();
+        return new SpilledHistory(readRecord(in, numCropTypes), id, numSeeds, lastHarvest);
+    }
+
+    /**
+     * Reads back every entry of the given history.
+     *
+     * @param numCropTypes The number of crop types the seeds are counted for
+     * @return The history with all of its entries in memory, or null for no history
+     */
+    public FarmHistory restore(FarmHistory history, int numCropTypes) throws IOException
+    {
+        if (history == null)
+        {
+            return null;
+        }
+
+        //the newest entries may still be in memory
+        ArrayList<FarmHistory> days = new ArrayList<>();
+        FarmHistory day = history;
+        for (; !(day instanceof SpilledHistory); day = day.getPrevious())
+        {
+            if (day == null)
+            {
+                return history;
+            }
+            days.add(day);
+        }
+
+        //read the rest of the records back, from the newest to the oldest
+        out.flush();
+        try (RandomAccessFile in = new RandomAccessFile(path.toFile(), "r"))
+        {
+            for (long id = ((SpilledHistory) day).id; id != -1; )
+            {
+                in.seek(id);
+                id = in.readLong();
+                days.add(readRecord(in, numCropTypes));
+            }
+        }
+
+        FarmHistory restored = null;
+        for (int i = days.size() - 1; i >= 0; i--)
+        {
+            FarmHistory entry = days.get(i);
+            restored = new FarmHistory(restored,
+                                       entry.getDaysRemaining(),
+                                       entry.getStartingGold(),
+                                       entry.getEndingGold(),
+                                       entry.getEndingGoldCache(),
+                                       entry.getSeedsPurchased());
+        }
+        return restored;
+    }
+
+    //reads the fields of a record that follow the previous record
+    private static FarmHistory readRecord(DataInput in, int numCropTypes) throws IOException
+    {
+        return new FarmHistory(null,
+                               in.readInt(),
+                               in.readInt(),
+                               in.readInt(),
+                               in.readInt(),
+                               FarmRuns.readCounts(in, numCropTypes));
+    }
+
+    //deletes the file once the simulation is done
+    public void close() throws IOException
+    {
+        out.close();
+        Files.deleteIfExists(path);
+    }
+}
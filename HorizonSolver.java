@@ -0,0 +1,242 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * This class finds the most profitable strategy over several seasons, or years.
+ *
+ * Every crop dies at the end of its season, so a farm enters the next season
+ * with nothing but its gold. The most gold a season can end with therefore
+ * only depends on the gold it starts with, and never less with more gold, so
+ * the best strategy over several seasons is simply the best strategy of every
+ * season, each starting with the gold the season before it ended with. The
+ * farms at the end of a season collapse to the single most gold among them.
+ *
+ * Every season keeps a table of the most gold it ends with for every gold it
+ * started with, along with its depth-first search, see FarmSolver. Some seeds,
+ * such as artichokes, are only sold from the second year on, so the first year
+ * of a season has a table and search of its own, and every later year shares
+ * another. Both are kept for every horizon solved with the same solver.
+ *
+ * Crops that grow in several seasons, such as corn, are planted again every
+ * season rather than carried over, and seasons without any seeds for sale,
+ * such as winter, end with exactly the gold they started with.
+ *
+ * Every season but the first is searched from its first day, with all the gold
+ * the season before it made, which quickly grows beyond what an exact search
+ * can solve. Every season's search is therefore limited in the permutations it
+ * may calculate, and a horizon that goes over the limit is given up on with a
+ * PermutationLimitException instead of running out of memory.
+ */
+public class HorizonSolver
+{
+    private final Energy energy;
+    private final long maxCachedPermutations; //the most permutations kept in each season's memoization cache, 0 for no limit
+    private final long maxSolvedStates; //the most states kept in each season's transposition table, 0 for no limit
+    private final long maxPermutations; //the most permutations a single season's search may calculate, 0 for no limit
+    private final long maxFarmPermutations; //the most permutations of any single farm, 0 for no limit
+    private final HashMap<String, FarmSolver> solvers; //the search of every season, created when first needed
+    private final HashMap<String, HashMap<Integer, Integer>> mostGold; //the most gold every season ends with, by the gold it starts with
+
+    //the most profitable farm of a single season of the horizon
+    public static class Season
+    {
+        private final int year;
+        private final CropCalculator.SEASON season;
+        private final int startingGold;
+        private final int endingGold;
+        private final Farm farm; //null if no seeds are sold in the season
+
+        public Season(int year, CropCalculator.SEASON season, int startingGold, int endingGold, Farm farm)
+        {
+            this.year = year;
+            this.season = season;
+            this.startingGold = startingGold;
+            this.endingGold = endingGold;
+            this.farm = farm;
+        }
+
+        public int getEndingGold()
+        {
+            return endingGold;
+        }
+    }
+
+    /**
+     * @param energy The player's energy
+     * @param maxCachedPermutations The most permutations kept in each season's memoization cache, 0 for no limit
+     * @param maxSolvedStates The most states kept in each season's transposition table, 0 for no limit
+     * @param maxPermutations The most permutations a single season's search may calculate, 0 for no limit
+     * @param maxFarmPermutations The most permutations of any single farm, 0 for no limit
+     */
+    public HorizonSolver(Energy energy, long maxCachedPermutations, long maxSolvedStates,
+                         long maxPermutations, long maxFarmPermutations)
+    {
+        this.energy = energy;
+        this.maxCachedPermutations = maxCachedPermutations;
+        this.maxSolvedStates = maxSolvedStates;
+        this.maxPermutations = maxPermutations;
+        this.maxFarmPermutations = maxFarmPermutations;
+        this.solvers = new HashMap<>();
+        this.mostGold = new HashMap<>();
+    }
+
+    public static void main(String[] args)
+    {
+        //editable variables
+        //a whole season from its first day only solves with little gold, so longer horizons are given up on
+        final int day = 1; //1-28
+        final CropCalculator.SEASON season = CropCalculator.SEASON.WINTER;
+        final int numSeasons = 2; //4 for a whole year
+        final int gold = 50;
+        final long maxCachedPermutations = 2000000; //0 for no limit
+        final long maxSolvedStates = 2000000; //0 for no limit
+        final long maxPermutations = 10000000; //horizons where a season calculates more permutations are given up on, 0 for no limit
+        final long maxFarmPermutations = 1000000; //horizons where a single farm has more permutations are given up on, 0 for no limit
+
+        //define the player's energy
+        final int numStardropsEaten = 0; //0-7
+        final Level wateringCanLevel = Level.COPPER;
+        final int farmingProficiencyLevel = 0; //0-10
+
+        double startTime = System.nanoTime();
+        Energy energy = new Energy(numStardropsEaten, wateringCanLevel, farmingProficiencyLevel);
+        HorizonSolver solver = new HorizonSolver(energy, maxCachedPermutations, maxSolvedStates,
+                                                 maxPermutations, maxFarmPermutations);
+        ArrayList<Season> seasons;
+        try
+        {
+            seasons = solver.solve(day, season, numSeasons, gold);
+        }
+        catch (PermutationLimitException e)
+        {
+            System.out.println("Error, The horizon is too large to solve, try fewer seasons or less gold... " + e.getMessage());
+            return;
+        }
+
+        for (Season solvedSeason : seasons)
+        {
+            System.out.println("Year " + solvedSeason.year + " " + solvedSeason.season + ": " +
+                               solvedSeason.startingGold + " -> " + solvedSeason.endingGold + " gold");
+        }
+        System.out.println("Starting on day " + day + " of " + season + " with " + gold + " gold, the most profitable " +
+                           "strategy over " + numSeasons + " seasons ends with " +
+                           seasons.get(seasons.size() - 1).endingGold + " gold");
+
+        try
+        {
+            writeReport("horizon.txt", seasons);
+        }
+        catch (IOException e)
+        {
+            System.out.println("Error, Unable to create or write to log file...");
+            e.printStackTrace();
+        }
+
+        System.out.println("Time: " + (System.nanoTime() - startTime)/1000000000 + " seconds");
+    }
+
+    /**
+     * Finds the most profitable strategy over the given number of seasons.
+     *
+     * @param day The day of the first season the player starts on, 1-28
+     * @param season The first season
+     * @param numSeasons The number of seasons, including the first
+     * @param gold The gold the player starts with
+     * @return The most profitable farm of every season, in order
+     * @throws PermutationLimitException If a season calculated more permutations than allowed
+     */
+    public ArrayList<Season> solve(int day, CropCalculator.SEASON season, int numSeasons, int gold)
+    {
+        ArrayList<Season> seasons = new ArrayList<>(numSeasons);
+        CropCalculator.SEASON[] allSeasons = CropCalculator.SEASON.values();
+        int year = 1;
+        for (int i = 0; i < numSeasons; i++)
+        {
+            int startingGold = gold;
+            int daysLeft = CropCalculator.DAYS_IN_A_SEASON - (i == 0 ? day : 1);
+            Farm farm = null;
+
+            String seasonKey = getSeasonKey(season, year);
+            FarmSolver solver = getSolver(season, year);
+            if (solver != null)
+            {
+                //only the first season can start on a later day, so only full seasons are kept in the table
+                Integer solvedGold = i > 0 ? mostGold.get(seasonKey).get(gold) : null;
+                if (solvedGold == null)
+                {
+                    farm = solver.solve(gold, daysLeft, maxPermutations, maxFarmPermutations);
+                    solvedGold = farm.getGold();
+                    if (i > 0)
+                    {
+                        mostGold.get(seasonKey).put(gold, solvedGold);
+                    }
+                }
+                gold = solvedGold;
+            }
+            seasons.add(new Season(year, season, startingGold, gold, farm));
+
+            //move on to the next season, and the next year after the winter
+            season = allSeasons[(season.ordinal() + 1) % allSeasons.length];
+            if (season.ordinal() == 0)
+            {
+                year++;
+            }
+        }
+        return seasons;
+    }
+
+    //seasons with the same key sell the same seeds, the first year being the only one that differs
+    private static String getSeasonKey(CropCalculator.SEASON season, int year)
+    {
+        return season + "," + Math.min(year, 2);
+    }
+
+    //returns the search of the given season of the given year, or null if no seeds are sold in it
+    private FarmSolver getSolver(CropCalculator.SEASON season, int year)
+    {
+        ArrayList<Crop> crops = CropCalculator.getCrops(season, year);
+        if (crops.isEmpty())
+        {
+            return null;
+        }
+
+        return solvers.computeIfAbsent(getSeasonKey(season, year), key ->
+        {
+            mostGold.put(key, new HashMap<>());
+            SimulationContext context = new SimulationContext(crops, CropCalculator.DAYS_IN_A_SEASON, energy, maxCachedPermutations);
+            return new FarmSolver(context, maxSolvedStates);
+        });
+    }
+
+    /**
+     * Writes the strategy of every season to a report, laid out like the report
+     * of a single season. Seasons found in the table of an earlier year are only
+     * written with their gold, as their strategy is the same as that year's.
+     */
+    private static void writeReport(String fileName, ArrayList<Season> seasons) throws IOException
+    {
+        try (PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(fileName))))
+        {
+            for (Season season : seasons)
+            {
+                writer.println("Year " + season.year + " " + season.season + ", starting with " + season.startingGold +
+                               " gold and ending with " + season.endingGold + " gold\n");
+                if (season.farm != null)
+                {
+                    for (FarmEvent event : season.farm.getEvents())
+                    {
+                        event.printStrategy(writer);
+                    }
+                }
+            }
+            if (writer.checkError())
+            {
+                throw new IOException("Unable to write the report");
+            }
+        }
+    }
+}
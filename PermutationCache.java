@@ -0,0 +1,330 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A memoization cache of the permutations calculated for farms, shared by all threads.
+ *
+ * Every entry is found by two longs: a key packing the gold and energy of a
+ * farm, see createKey(), and a bit for every crop id that can still grow. Both
+ * are stored in open addressing hash tables with linear probing, so looking
+ * up permutations does not create any objects, whatever the number of crop types.
+ *
+ * The entries are split into segments by the highest bits of their hash, and
+ * every segment is a table of its own with its own lock. Threads looking up
+ * permutations only wait for each other when their keys fall into the same
+ * segment, so the cache does not hold up the threads simulating farms.
+ *
+ * The cache can be limited to a maximum number of cached permutations, which
+ * every segment holds an equal share of. Once a segment's share is crossed,
+ * its entries are evicted using the clock algorithm: every entry is marked when
+ * it is used, and the clock hand evicts the first entry it finds that has not
+ * been used since the hand last passed it.
+ */
+public class PermutationCache
+{
+    private static final long EMPTY = -1; //keys are never negative
+    private static final int ENERGY_BITS = 31;
+    private static final int SEGMENT_BITS = 6; //the highest bits of the hash choose the segment
+    private static final int INITIAL_CAPACITY = 16; //of every segment
+
+    private final Segment[] segments;
+
+    public PermutationCache(long maxPermutations)
+    {
+        long maxSegmentPermutations = (maxPermutations + (1 << SEGMENT_BITS) - 1) >> SEGMENT_BITS;
+        this.segments = new Segment[1 << SEGMENT_BITS];
+        for (int i = 0; i < segments.length; i++)
+        {
+            segments[i] = new Segment(maxSegmentPermutations);
+        }
+    }
+
+    /**
+     * Packs the gold and energy of a farm's choices for planting into a key.
+     * The types of crops that can still grow are kept alongside the key as a crop mask.
+     *
+     * @param goldUnits The gold the farm can spend, divided by the gold unit of the crops
+     * @param energy The number of tiles the farm can still water, or 0 if it does not matter
+     * @return The key, or -1 if the gold or energy is negative
+     */
+    public static long createKey(int goldUnits, int energy)
+    {
+        if (goldUnits < 0 || energy < 0)
+        {
+            return EMPTY;
+        }
+
+        return ((long) goldUnits << ENERGY_BITS) | energy;
+    }
+
+    /**
+     * Returns the cached permutations for the given key and crop mask, or null
+     * if they have not been calculated yet (or were evicted).
+     *
+     * @param key The key created by createKey()
+     * @param cropMask A bit for every crop id that can still grow before the end of the season
+     */
+    public ArrayList<FarmProto> get(long key, long cropMask)
+    {
+        return getSegment(key, cropMask).get(key, cropMask);
+    }
+
+    /**
+     * Caches the permutations for the given key and crop mask.
+     *
+     * Another thread may calculate the same permutations at the same time,
+     * in which case both are identical and the first one cached is kept.
+     *
+     * @return The permutations that are cached for the given key and crop mask
+     */
+    public ArrayList<FarmProto> put(long key, long cropMask, ArrayList<FarmProto> farmProtos)
+    {
+        if (key == EMPTY)
+        {
+            return farmProtos;
+        }
+
+        return getSegment(key, cropMask).put(key, cropMask, farmProtos);
+    }
+
+    public long getHits()
+    {
+        long hits = 0;
+        for (Segment segment : segments)
+        {
+            hits += segment.getHits();
+        }
+        return hits;
+    }
+
+    public long getMisses()
+    {
+        long misses = 0;
+        for (Segment segment : segments)
+        {
+            misses += segment.getMisses();
+        }
+        return misses;
+    }
+
+    public long getEvictions()
+    {
+        long evictions = 0;
+        for (Segment segment : segments)
+        {
+            evictions += segment.getEvictions();
+        }
+        return evictions;
+    }
+
+    //returns the number of permutations currently cached
+    public long getNumPermutations()
+    {
+        long numPermutations = 0;
+        for (Segment segment : segments)
+        {
+            numPermutations += segment.getNumPermutations();
+        }
+        return numPermutations;
+    }
+
+    //returns the segment the given key and crop mask belong to
+    private Segment getSegment(long key, long cropMask)
+    {
+        return segments[hash(key, cropMask) >>> (Integer.SIZE - SEGMENT_BITS)];
+    }
+
+    //spreads the bits of a key and crop mask over the bits used to choose the segment and index its table
+    private static int hash(long key, long cropMask)
+    {
+        long hash = key*0x9E3779B97F4A7C15L + cropMask*0xC2B2AE3D27D4EB4FL;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    //a single open addressing table, only used by one thread at a time
+    private static class Segment
+    {
+        private final long maxPermutations; //the most permutations cached at once, 0 for no limit
+        private long[] keys;
+        private long[] cropMasks; //the crop mask of every entry, alongside its key
+        private ArrayList<?>[] values;
+        private boolean[] referenced; //whether each entry was used since the clock hand last passed it
+        private int size;
+        private long numPermutations; //the number of permutations in all entries
+        private int hand; //the position of the clock hand
+        private long hits;
+        private long misses;
+        private long evictions;
+
+        public Segment(long maxPermutations)
+        {
+            this.maxPermutations = maxPermutations;
+            this.keys = new long[INITIAL_CAPACITY];
+            this.cropMasks = new long[INITIAL_CAPACITY];
+            this.values = new ArrayList<?>[INITIAL_CAPACITY];
+            this.referenced = new boolean[INITIAL_CAPACITY];
+            Arrays.fill(keys, EMPTY);
+        }
+
+        @SuppressWarnings("unchecked")
+        public synchronized ArrayList<FarmProto> get(long key, long cropMask)
+        {
+            if (key != EMPTY)
+            {
+                int slot = indexOf(key, cropMask);
+                if (keys[slot] == key && cropMasks[slot] == cropMask)
+                {
+                    hits++;
+                    referenced[slot] = true;
+                    return (ArrayList<FarmProto>) values[slot];
+                }
+            }
+
+            misses++;
+            return null;
+        }
+
+        @SuppressWarnings("unchecked")
+        public synchronized ArrayList<FarmProto> put(long key, long cropMask, ArrayList<FarmProto> farmProtos)
+        {
+            int slot = indexOf(key, cropMask);
+            if (keys[slot] == key && cropMasks[slot] == cropMask)
+            {
+                return (ArrayList<FarmProto>) values[slot];
+            }
+
+            //make room for the new permutations
+            while (maxPermutations > 0 && size > 0 && numPermutations + farmProtos.size() > maxPermutations)
+            {
+                evict();
+            }
+            if ((size + 1)*2 > keys.length)
+            {
+                resize();
+            }
+
+            slot = indexOf(key, cropMask);
+            keys[slot] = key;
+            cropMasks[slot] = cropMask;
+            values[slot] = farmProtos;
+            referenced[slot] = false;
+            size++;
+            numPermutations += farmProtos.size();
+            return farmProtos;
+        }
+
+        //returns the slot holding the given key and crop mask, or the empty slot they would be inserted into
+        private int indexOf(long key, long cropMask)
+        {
+            int mask = keys.length - 1;
+            int slot = hash(key, cropMask) & mask;
+            while (keys[slot] != EMPTY && (keys[slot] != key || cropMasks[slot] != cropMask))
+            {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        //doubles the size of the table
+        private void resize()
+        {
+            long[] oldKeys = keys;
+            long[] oldCropMasks = cropMasks;
+            ArrayList<?>[] oldValues = values;
+            boolean[] oldReferenced = referenced;
+
+            keys = new long[oldKeys.length*2];
+            cropMasks = new long[oldKeys.length*2];
+            values = new ArrayList<?>[oldKeys.length*2];
+            referenced = new boolean[oldKeys.length*2];
+            Arrays.fill(keys, EMPTY);
+            hand = 0;
+
+            for (int i = 0; i < oldKeys.length; i++)
+            {
+                if (oldKeys[i] != EMPTY)
+                {
+                    int slot = indexOf(oldKeys[i], oldCropMasks[i]);
+                    keys[slot] = oldKeys[i];
+                    cropMasks[slot] = oldCropMasks[i];
+                    values[slot] = oldValues[i];
+                    referenced[slot] = oldReferenced[i];
+                }
+            }
+        }
+
+        //evicts the first entry the clock hand finds that has not been used since it last passed it
+        private void evict()
+        {
+            while (true)
+            {
+                hand = (hand + 1) & (keys.length - 1);
+                if (keys[hand] != EMPTY)
+                {
+                    if (referenced[hand])
+                    {
+                        referenced[hand] = false;
+                    }
+                    else
+                    {
+                        remove(hand);
+                        evictions++;
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Removes the entry in the given slot.
+         *
+         * Entries after it that were pushed past their own slot are moved
+         * back, so that every entry can still be found by probing from its
+         * own slot without running into an empty slot.
+         */
+        private void remove(int slot)
+        {
+            int mask = keys.length - 1;
+            numPermutations -= values[slot].size();
+            size--;
+
+            int hole = slot;
+            for (int i = (slot + 1) & mask; keys[i] != EMPTY; i = (i + 1) & mask)
+            {
+                int home = hash(keys[i], cropMasks[i]) & mask;
+                if (((i - home) & mask) >= ((i - hole) & mask))
+                {
+                    keys[hole] = keys[i];
+                    cropMasks[hole] = cropMasks[i];
+                    values[hole] = values[i];
+                    referenced[hole] = referenced[i];
+                    hole = i;
+                }
+            }
+
+            keys[hole] = EMPTY;
+            values[hole] = null;
+            referenced[hole] = false;
+        }
+
+        public synchronized long getHits()
+        {
+            return hits;
+        }
+
+        public synchronized long getMisses()
+        {
+            return misses;
+        }
+
+        public synchronized long getEvictions()
+        {
+            return evictions;
+        }
+
+        public synchronized long getNumPermutations()
+        {
+            return numPermutations;
+        }
+    }
+}
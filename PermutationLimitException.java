@@ -0,0 +1,11 @@
+/**
+ * Thrown when a search calculates more permutations than it was allowed to,
+ * so that a scenario too large to solve is given up on before it fills the memory.
+ */
+public class PermutationLimitException extends RuntimeException
+{
+    public PermutationLimitException(String message)
+    {
+        super(message);
+    }
+}
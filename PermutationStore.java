@@ -0,0 +1,473 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A cache of the permutations calculated for farms that is kept on disk, so
+ * that later runs with the same crops start with the permutations of earlier runs.
+ *
+ * The permutations of a key only depend on the types of crops of the season and
+ * the gold buckets and seed blocks, so these are written at the beginning of the file.
+ * A file written by a simulation with different crops, gold buckets or seed blocks is
+ * started over.
+ * The number of tiles is not needed, as the key already holds the tiles left
+ * whenever they limit the seeds that can be planted.
+ *
+ * The layout is a simple sequence of binary values:
+ *
+ *      int magic, int version
+ *      int number of crop types, then for every crop type: utf name, int buy price
+ *      int gold bucket size, double gold bucket ratio, int seed block size
+ *      then for every key: long key, long crop mask, int length of the rest of the entry, int permutations,
+ *          then for every permutation: int gold, short filled slots, then for every filled slot: short slot, int number
+ *
+ * The entries already in the file when it is opened are memory mapped and only
+ * read when their key is looked up. New entries are appended to the end of the
+ * file, and are read back from the file itself when their key is looked up, as the
+ * memory cache may have evicted them since. An entry cut short by a crash is
+ * simply dropped the next time the file is opened.
+ *
+ * The offset of every entry is found by its key and crop mask in an open
+ * addressing hash table with linear probing, so the index holds no objects
+ * whatever the number of entries.
+ *
+ * Permutations may be looked up and stored on any number of threads at once.
+ */
+public class PermutationStore
+{
+    private static final int MAGIC = 0x53564350; //"SVCP"
+    private static final int VERSION = 4;
+    private static final int ENTRY_HEADER_SIZE = Long.BYTES + Long.BYTES + Integer.BYTES; //the key, the crop mask and the length
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final long MAX_FILE_SIZE = Integer.MAX_VALUE; //the most a single memory map can hold
+    private static final long EMPTY = -1; //keys are never negative
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final SimulationContext context;
+    private final FileChannel channel;
+    private final MappedByteBuffer entries; //the entries already in the file when it was opened
+    private final ByteBuffer pending; //entries not yet appended to the file
+    private long[] keys;
+    private long[] cropMasks; //the crop mask of every entry, alongside its key
+    private long[] offsets; //the offset in the file of every entry's permutations, following its length
+    private int size;
+    private long fileSize;
+    private IOException error; //the first error appending to the file, after which nothing more is appended
+    private long hits;
+    private long numAppended;
+
+    private PermutationStore(SimulationContext context, FileChannel channel, MappedByteBuffer entries, long fileSize)
+    {
+        this.context = context;
+        this.channel = channel;
+        this.entries = entries;
+        this.pending = ByteBuffer.allocate(BUFFER_SIZE);
+        this.keys = new long[INITIAL_CAPACITY];
+        this.cropMasks = new long[INITIAL_CAPACITY];
+        this.offsets = new long[INITIAL_CAPACITY];
+        Arrays.fill(keys, EMPTY);
+        this.fileSize = fileSize;
+        this.hits = 0;
+        this.numAppended = 0;
+    }
+
+    /**
+     * Opens the permutations kept in the given file, creating the file if it does not exist.
+     *
+     * @param file The file the permutations are kept in
+     * @param context The simulation, with its gold buckets already set
+     */
+    public static PermutationStore open(Path file, SimulationContext context) throws IOException
+    {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try
+        {
+            byte[] header = createHeader(context);
+            long fileSize = channel.size();
+            if (fileSize < header.length || !hasHeader(channel, header))
+            {
+                channel.truncate(0);
+                channel.write(ByteBuffer.wrap(header), 0);
+                fileSize = header.length;
+            }
+
+            //find every complete entry, dropping an entry cut short at the end of the file
+            ArrayList<long[]> index = new ArrayList<>(); //the key, crop mask and offset of every entry
+            long offset = header.length;
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(offset)), BUFFER_SIZE));
+            try
+            {
+                while (true)
+                {
+                    long key = in.readLong();
+                    long cropMask = in.readLong();
+                    int length = in.readInt();
+                    long end = offset + ENTRY_HEADER_SIZE + length;
+                    if (length < Integer.BYTES || end > fileSize || end > MAX_FILE_SIZE)
+                    {
+                        break;
+                    }
+                    in.skipNBytes(length);
+                    index.add(new long[] {key, cropMask, offset + ENTRY_HEADER_SIZE});
+                    offset = end;
+                }
+            }
+            catch (EOFException e)
+            {
+                //the last entry was cut short, or there are no more entries
+            }
+
+            //the file is only mapped once it no longer holds the dropped entry
+            if (offset < fileSize)
+            {
+                channel.truncate(offset);
+            }
+            MappedByteBuffer entries = channel.map(FileChannel.MapMode.READ_ONLY, 0, offset);
+
+            PermutationStore store = new PermutationStore(context, channel, entries, offset);
+            for (long[] entry : index)
+            {
+                store.index(entry[0], entry[1], entry[2]);
+            }
+            return store;
+        }
+        catch (IOException e)
+        {
+            channel.close();
+            throw e;
+        }
+    }
+
+    //writes the types of crops, the gold buckets and the seed blocks the permutations were calculated with
+    private static byte[] createHeader(SimulationContext context) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(context.getNumCropTypes());
+        for (int i = 0; i < context.getNumCropTypes(); i++)
+        {
+            out.writeUTF(context.getCropType(i).getName());
+            out.writeInt(context.getCropType(i).getBuyPrice());
+        }
+        out.writeInt(context.getBuckets().getBucketSize());
+        out.writeDouble(context.getBuckets().getBucketRatio());
+        out.writeInt(context.getBuckets().getSeedBlockSize());
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    //indicates whether the file begins with the given header
+    private static boolean hasHeader(FileChannel channel, byte[] header) throws IOException
+    {
+        ByteBuffer fileHeader = ByteBuffer.allocate(header.length);
+        while (fileHeader.hasRemaining())
+        {
+            if (channel.read(fileHeader, fileHeader.position()) <= 0)
+            {
+                return false;
+            }
+        }
+        return fileHeader.flip().equals(ByteBuffer.wrap(header));
+    }
+
+    /**
+     * Returns the permutations kept for the given key and crop mask, or null if there are none.
+     *
+     * Permutations appended since the file was opened are read back from the file,
+     * after appending the buffered entries if they are among them.
+     */
+    public synchronized ArrayList<FarmProto> get(long key, long cropMask)
+    {
+        int slot = indexOf(key, cropMask);
+        if (keys[slot] == EMPTY)
+        {
+            return null;
+        }
+
+        ArrayList<FarmProto> farmProtos;
+        long offset = offsets[slot];
+        if (offset < entries.limit())
+        {
+            farmProtos = read(entries, (int) offset);
+        }
+        else
+        {
+            try
+            {
+                farmProtos = read(readAppended(offset), 0);
+            }
+            catch (IOException e)
+            {
+                //the permutations can always be calculated again, the error is thrown by close()
+                error = e;
+                return null;
+            }
+        }
+
+        hits++;
+        return farmProtos;
+    }
+
+    //reads the permutations of an entry appended since the file was opened, found at the given offset
+    private ByteBuffer readAppended(long offset) throws IOException
+    {
+        if (offset >= fileSize)
+        {
+            flush();
+        }
+
+        ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+        readFully(length, offset - Integer.BYTES);
+        ByteBuffer entry = ByteBuffer.allocate(length.getInt(0));
+        readFully(entry, offset);
+        return entry;
+    }
+
+    //fills the given buffer with the bytes of the file at the given offset
+    private void readFully(ByteBuffer buffer, long offset) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            if (channel.read(buffer, offset + buffer.position()) < 0)
+            {
+                throw new EOFException("The permutation store ends within an entry");
+            }
+        }
+    }
+
+    //reads the permutations of an entry, starting at the given position of the buffer
+    private ArrayList<FarmProto> read(ByteBuffer entries, int position)
+    {
+        int numProtos = entries.getInt(position);
+        position += Integer.BYTES;
+        ArrayList<FarmProto> farmProtos = new ArrayList<>(numProtos);
+        for (int i = 0; i < numProtos; i++)
+        {
+            int gold = entries.getInt(position);
+            int numFilledSlots = entries.getShort(position + Integer.BYTES);
+            position += Integer.BYTES + Short.BYTES;
+
+            int[] seeds = new int[context.getNumCropTypes()];
+            for (int j = 0; j < numFilledSlots; j++)
+            {
+                seeds[entries.getShort(position)] = entries.getInt(position + Short.BYTES);
+                position += Short.BYTES + Integer.BYTES;
+            }
+            farmProtos.add(new FarmProto(seeds, gold));
+        }
+        return farmProtos;
+    }
+
+    /**
+     * Appends the permutations calculated for the given key and crop mask to
+     * the file, unless the file already holds them or has grown too large to map.
+     *
+     * An error appending to the file is thrown by close(), so that the
+     * simulation is not stopped by a cache that can always be calculated again.
+     */
+    public synchronized void put(long key, long cropMask, ArrayList<FarmProto> farmProtos)
+    {
+        if (error != null || keys[indexOf(key, cropMask)] != EMPTY)
+        {
+            return;
+        }
+
+        int length = Integer.BYTES;
+        for (FarmProto farmProto : farmProtos)
+        {
+            length += Integer.BYTES + Short.BYTES;
+            for (int count : farmProto.getNewSeeds())
+            {
+                if (count > 0)
+                {
+                    length += Short.BYTES + Integer.BYTES;
+                }
+            }
+        }
+        int entrySize = ENTRY_HEADER_SIZE + length;
+        if (fileSize + pending.position() + entrySize > MAX_FILE_SIZE)
+        {
+            return;
+        }
+
+        try
+        {
+            append(key, cropMask, farmProtos, length, entrySize);
+        }
+        catch (IOException e)
+        {
+            error = e;
+        }
+    }
+
+    //appends a single entry of the given length, not counting the key, the crop mask and the length themselves
+    private void append(long key, long cropMask, ArrayList<FarmProto> farmProtos, int length, int entrySize) throws IOException
+    {
+        numAppended++;
+        ByteBuffer entry = entrySize > pending.capacity() ? ByteBuffer.allocate(entrySize) : null;
+        ByteBuffer out = entry != null ? entry : pending;
+        if (entry != null || pending.remaining() < entrySize)
+        {
+            flush();
+        }
+        index(key, cropMask, fileSize + pending.position() + ENTRY_HEADER_SIZE);
+
+        out.putLong(key);
+        out.putLong(cropMask);
+        out.putInt(length);
+        out.putInt(farmProtos.size());
+        for (FarmProto farmProto : farmProtos)
+        {
+            int[] seeds = farmProto.getNewSeeds();
+            int numFilledSlots = 0;
+            for (int count : seeds)
+            {
+                if (count > 0)
+                {
+                    numFilledSlots++;
+                }
+            }
+
+            out.putInt(farmProto.getGold());
+            out.putShort((short) numFilledSlots);
+            for (int i = 0; i < seeds.length; i++)
+            {
+                if (seeds[i] > 0)
+                {
+                    out.putShort((short) i);
+                    out.putInt(seeds[i]);
+                }
+            }
+        }
+
+        //entries larger than the buffer are written on their own
+        if (entry != null)
+        {
+            write(entry);
+        }
+    }
+
+    //adds the offset of the permutations of the given key and crop mask to the index
+    private void index(long key, long cropMask, long offset)
+    {
+        if ((size + 1)*2 > keys.length)
+        {
+            resize();
+        }
+
+        int slot = indexOf(key, cropMask);
+        if (keys[slot] == EMPTY)
+        {
+            size++;
+        }
+        keys[slot] = key;
+        cropMasks[slot] = cropMask;
+        offsets[slot] = offset;
+    }
+
+    //returns the slot holding the given key and crop mask, or the empty slot they would be added to
+    private int indexOf(long key, long cropMask)
+    {
+        long hash = key*0x9E3779B97F4A7C15L + cropMask*0xC2B2AE3D27D4EB4FL;
+        int mask = keys.length - 1;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (keys[slot] != EMPTY && (keys[slot] != key || cropMasks[slot] != cropMask))
+        {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    //doubles the size of the index
+    private void resize()
+    {
+        long[] oldKeys = keys;
+        long[] oldCropMasks = cropMasks;
+        long[] oldOffsets = offsets;
+
+        keys = new long[oldKeys.length*2];
+        cropMasks = new long[oldKeys.length*2];
+        offsets = new long[oldKeys.length*2];
+        Arrays.fill(keys, EMPTY);
+
+        for (int i = 0; i < oldKeys.length; i++)
+        {
+            if (oldKeys[i] != EMPTY)
+            {
+                int slot = indexOf(oldKeys[i], oldCropMasks[i]);
+                keys[slot] = oldKeys[i];
+                cropMasks[slot] = oldCropMasks[i];
+                offsets[slot] = oldOffsets[i];
+            }
+        }
+    }
+
+    //appends the buffered entries to the file
+    private void flush() throws IOException
+    {
+        write(pending);
+    }
+
+    //appends the given entries to the file and empties the buffer
+    private void write(ByteBuffer buffer) throws IOException
+    {
+        buffer.flip();
+        while (buffer.hasRemaining())
+        {
+            fileSize += channel.write(buffer, fileSize);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Appends the buffered entries and closes the file.
+     *
+     * @throws IOException If any entry could not be appended to the file
+     */
+    public synchronized void close() throws IOException
+    {
+        try
+        {
+            if (error != null)
+            {
+                throw error;
+            }
+            flush();
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+
+    //returns the number of keys whose permutations were read from the file
+    public synchronized long getHits()
+    {
+        return hits;
+    }
+
+    //returns the number of keys whose permutations were appended to the file
+    public synchronized long getNumAppended()
+    {
+        return numAppended;
+    }
+
+    //returns the number of keys kept in the file, including the ones appended
+    public synchronized int size()
+    {
+        return size;
+    }
+}
@@ -0,0 +1,372 @@
+import java.util.ArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class holds everything that is shared by all farms of a single simulation:
+ *      the player's energy
+ *      the types of crops that can be planted this season
+ *      the number of days remaining before the end of the season
+ *      the memoization cache of permutations, and the permutations kept on disk by earlier runs
+ *      the harvests of every crop on a farm, worked out ahead of time
+ *      the bounds used for pruning farms
+ *      the gold buckets farms are merged into, if the result may be approximate
+ *
+ * Every farm keeps a reference to its simulation's context, so any number
+ * of simulations can run at the same time without interfering.
+ */
+public class SimulationContext
+{
+    private Energy energy;
+    private final Crop[] catalog; //every type of crop that can be planted this season, indexed by crop id
+    private final int[] offsets; //the first slot of each type of crop in a farm's crops array, indexed by crop id
+    private final int numSlots; //the length of a farm's crops array
+    private final ArrayList<Crop> cropTypes; //all unique types of crops that can still grow before the end of the season
+    private final int leastExpensiveCropValue;
+    private final int goldUnit; //the greatest common divisor of every buy price, so every purchase costs a multiple of it
+    private final PermutationCache cachedFarms; //a memoization cache of all combinations that have already been seen, shared by all threads
+    private PermutationStore storedFarms; //the permutations kept on disk, or null if they are not kept
+    private final CropTimeline timeline;
+    private final FarmBound bound;
+    private FarmBuckets buckets;
+    private final LongAdder numPermutationNodes; //the number of steps taken calculating permutations, added to by all threads
+    private final LongAdder allocatedBytes; //the bytes allocated by the threads simulating farms for the thread driving the simulation
+    private long cropMask; //a bit for the crop id of every type of crop in cropTypes
+    private int daysRemaining;
+    private long maxFarmPermutations; //the most permutations a single farm may have, 0 for no limit
+
+    /**
+     * Performs first time initilization for all farms.
+     *
+     * All farms share the exact same types of crops
+     * they can choose from to plant on the farm and
+     * the exact same number of days remaining before
+     * the end of the season.
+     *
+     * @param crops The types of crops that can be planted this season, sorted by descending buy price, at most 63
+     * @param daysLeft The days left before the end of the season, plus one
+     * @param energy The player's energy
+     * @param maxCachedPermutations The most permutations kept in the memoization cache, 0 for no limit
+     */
+    public SimulationContext(ArrayList<Crop> crops, int daysLeft, Energy energy, long maxCachedPermutations)
+    {
+        //every type of crop needs a bit of its own in the crop mask
+        if (crops.size() > Long.SIZE - 1)
+        {
+            throw new IllegalArgumentException("at most " + (Long.SIZE - 1) + " types of crops can be planted, but there are " + crops.size());
+        }
+
+        this.energy = energy;
+        this.cachedFarms = new PermutationCache(maxCachedPermutations);
+        this.numPermutationNodes = new LongAdder();
+        this.allocatedBytes = new LongAdder();
+        this.cropTypes = new ArrayList<>(crops);
+        this.leastExpensiveCropValue = crops.get(crops.size()-1).getBuyPrice();
+
+        //lay out the slots of every type of crop
+        this.catalog = crops.toArray(new Crop[0]);
+        int unit = 0;
+        for (Crop crop : catalog)
+        {
+            unit = gcd(unit, crop.getBuyPrice());
+        }
+        this.goldUnit = unit;
+        this.offsets = new int[catalog.length];
+        int slots = 0;
+        for (int i = 0; i < catalog.length; i++)
+        {
+            offsets[i] = slots;
+            slots += catalog[i].getGrowthTime() + 1;
+            if (catalog[i].canRegrow())
+            {
+                slots += catalog[i].getRegrowthTime() + 1;
+            }
+        }
+        this.numSlots = slots;
+
+        this.daysRemaining = daysLeft;
+        update();
+        this.timeline = new CropTimeline(this);
+        this.bound = new FarmBound(this);
+        this.buckets = new FarmBuckets(this, 0, 0, 0);
+    }
+
+    /**
+     * Updates all farms for the beginning of a new day.
+     *
+     * Filters out and removes all seeds that could not
+     * possibly yield crops before the end of the season.
+     *
+     * Decrements the number of days remaining.
+     */
+    public void update()
+    {
+        setDaysRemaining(daysRemaining - 1);
+    }
+
+    /**
+     * Moves the simulation to the given day, for solvers that do not
+     * simulate the days in order. Only the seeds that could still yield
+     * crops before the end of the season are kept.
+     *
+     * @param daysLeft The days left before the end of the season on the day
+     */
+    public void setDaysRemaining(int daysLeft)
+    {
+        daysRemaining = daysLeft;
+        cropTypes.clear();
+        cropMask = 0;
+        for (int i = 0; i < catalog.length; i++)
+        {
+            if (catalog[i].getGrowthTime() <= daysRemaining)
+            {
+                cropTypes.add(catalog[i]);
+                cropMask |= 1L << i;
+            }
+        }
+    }
+
+    /**
+     * Returns the cached permutations for the given key and crop mask, or null
+     * if they have not been calculated yet. Permutations missing from memory
+     * are read from disk, if they were kept there by an earlier run.
+     */
+    public ArrayList<FarmProto> getCachedPermutations(long key, long cropMask)
+    {
+        ArrayList<FarmProto> farmProtos = cachedFarms.get(key, cropMask);
+        if (farmProtos == null && storedFarms != null)
+        {
+            farmProtos = storedFarms.get(key, cropMask);
+            if (farmProtos != null)
+            {
+                farmProtos = cachedFarms.put(key, cropMask, farmProtos);
+            }
+        }
+        return farmProtos;
+    }
+
+    /**
+     * Caches the permutations for the given key and crop mask, and keeps
+     * them on disk if permutations are kept.
+     *
+     * @return The permutations that are cached for the given key and crop mask
+     */
+    public ArrayList<FarmProto> cachePermutations(long key, long cropMask, ArrayList<FarmProto> farmProtos)
+    {
+        if (storedFarms != null)
+        {
+            storedFarms.put(key, cropMask, farmProtos);
+        }
+        return cachedFarms.put(key, cropMask, farmProtos);
+    }
+
+    /**
+     * Keeps the permutations calculated on disk, and reads the permutations
+     * kept by earlier runs from there. Must be set after the gold buckets.
+     */
+    public void setPermutationStore(PermutationStore storedFarms)
+    {
+        this.storedFarms = storedFarms;
+    }
+
+    //returns the permutations kept on disk, or null if they are not kept
+    public PermutationStore getPermutationStore()
+    {
+        return storedFarms;
+    }
+
+    /**
+     * Creates the crops array of a new farm.
+     *
+     * @param crops The crops already on the farm
+     * @param seeds The number of seeds of each type of crop to plant, indexed by crop id
+     * @return A copy of crops with the seeds planted
+     */
+    public int[] plant(int[] crops, int[] seeds)
+    {
+        int[] totalCrops = crops.clone();
+        for (int i = 0; i < seeds.length; i++)
+        {
+            totalCrops[offsets[i]] += seeds[i];
+        }
+        return totalCrops;
+    }
+
+    //returns the id of the given type of crop, or -1 if it cannot be planted this season
+    public int getCropId(Crop cropType)
+    {
+        for (int i = 0; i < catalog.length; i++)
+        {
+            if (catalog[i] == cropType)
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    //returns the number of unique types of crops that can be planted this season
+    public int getNumCropTypes()
+    {
+        return catalog.length;
+    }
+
+    public Crop getCropType(int cropId)
+    {
+        return catalog[cropId];
+    }
+
+    //returns the first slot of the given type of crop in a farm's crops array
+    public int getOffset(int cropId)
+    {
+        return offsets[cropId];
+    }
+
+    //returns the length of a farm's crops array
+    public int getNumSlots()
+    {
+        return numSlots;
+    }
+
+    /**
+     * Returns a rough estimate of the bytes of memory a single farm uses,
+     * including its crops and its own entry in the history. The rest of
+     * the history is shared with other farms and is not counted.
+     */
+    public long estimateFarmSize()
+    {
+        long farmSize = 48; //object header, gold, context, crops and history
+        long cropsSize = 16 + 4L*numSlots;
+        long historySize = 40;
+        return farmSize + cropsSize + historySize;
+    }
+
+    //returns the types of crops that can still grow before the end of the season
+    public ArrayList<Crop> getCropTypes()
+    {
+        return cropTypes;
+    }
+
+    //returns a bit for the crop id of every type of crop that can still grow before the end of the season
+    public long getCropMask()
+    {
+        return cropMask;
+    }
+
+    public int getLeastExpensiveCropValue()
+    {
+        return leastExpensiveCropValue;
+    }
+
+    /**
+     * Returns the greatest common divisor of the buy prices of every type of crop.
+     *
+     * Every purchase costs a multiple of this unit, so farms whose gold only
+     * differs by less than a unit can buy exactly the same seeds. Rounding gold
+     * down to the least expensive crop instead would hide seeds whose price is
+     * not a multiple of it, such as Blue Jazz at 30 gold next to Parsnips at 20.
+     */
+    public int getGoldUnit()
+    {
+        return goldUnit;
+    }
+
+    private static int gcd(int a, int b)
+    {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    //returns the days left before the end of the season on the current day
+    public int getDaysRemaining()
+    {
+        return daysRemaining;
+    }
+
+    public Energy getEnergy()
+    {
+        return energy;
+    }
+
+    /**
+     * Changes the player's energy, so that searches for players who can water
+     * different numbers of tiles share the same context. The cached permutations
+     * stay valid, as they are found by the tiles a farm can still water rather
+     * than by the player's energy. Only for searches that do not prune with the
+     * lower bound, such as FarmSolver, as the gold of the old energy no longer holds.
+     */
+    public void setEnergy(Energy energy)
+    {
+        this.energy = energy;
+    }
+
+    public void addPermutationNodes(long numNodes)
+    {
+        numPermutationNodes.add(numNodes);
+    }
+
+    //returns the number of steps taken calculating permutations since the simulation began
+    public long getNumPermutationNodes()
+    {
+        return numPermutationNodes.sum();
+    }
+
+    /**
+     * Limits the permutations of any single farm, so that a search given too much
+     * gold is given up on before one farm's permutations fill the memory.
+     *
+     * @param maxFarmPermutations The most permutations of a single farm, 0 for no limit
+     */
+    public void setMaxFarmPermutations(long maxFarmPermutations)
+    {
+        this.maxFarmPermutations = maxFarmPermutations;
+    }
+
+    public long getMaxFarmPermutations()
+    {
+        return maxFarmPermutations;
+    }
+
+    public void addAllocatedBytes(long numBytes)
+    {
+        allocatedBytes.add(numBytes);
+    }
+
+    //returns the bytes allocated by other threads simulating farms since the simulation began
+    public long getAllocatedBytes()
+    {
+        return allocatedBytes.sum();
+    }
+
+    public PermutationCache getPermutationCache()
+    {
+        return cachedFarms;
+    }
+
+    public CropTimeline getTimeline()
+    {
+        return timeline;
+    }
+
+    public FarmBound getBound()
+    {
+        return bound;
+    }
+
+    /**
+     * Approximates the simulation by splitting gold into buckets, see FarmBuckets.
+     * Must be set before the first day is simulated.
+     *
+     * @param bucketSize The gold in every bucket, 0 for no fixed buckets
+     * @param bucketRatio The fraction of the gold every bucket spans, 0 for no growing buckets
+     * @param seedBlockSize The number of seeds bought at once, 0 to buy any number of seeds
+     */
+    public void setGoldBuckets(int bucketSize, double bucketRatio, int seedBlockSize)
+    {
+        buckets = new FarmBuckets(this, bucketSize, bucketRatio, seedBlockSize);
+    }
+
+    //returns the gold buckets farms are merged into, which never merge anything unless set
+    public FarmBuckets getBuckets()
+    {
+        return buckets;
+    }
+}
@@ -0,0 +1,256 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * A class for recording what the solver did on every simulated day, so that
+ * runs can be compared and graphed. For every day it records:
+ *      the farms at the beginning and the end of the day
+ *      the farms permutated, merged, pruned and discarded
+ *      the hits, misses and evictions of the memoization cache
+ *      the steps taken calculating permutations
+ *      the time spent expanding, merging, pruning and selecting farms
+ *      the bytes allocated by the solving thread and by the threads simulating farms for it
+ *
+ * The days are written as CSV or as one JSON object per line, either as
+ * soon as each day ends or all at once when the metrics are closed.
+ */
+public class SolverMetrics
+{
+    public enum Format
+    {
+        CSV,
+        JSON
+    }
+
+    private static final String[] COLUMNS = {"day", "frontier_in", "permutations", "merged", "pruned", "discarded", "frontier_out",
+                                             "cache_hits", "cache_misses", "cache_evictions", "permutation_nodes",
+                                             "expand_ms", "merge_ms", "prune_ms", "select_ms", "total_ms", "allocated_bytes"};
+
+    //the index of every column
+    private static final int DAY = 0;
+    private static final int FRONTIER_IN = 1;
+    private static final int PERMUTATIONS = 2;
+    private static final int MERGED = 3;
+    private static final int PRUNED = 4;
+    private static final int DISCARDED = 5;
+    private static final int FRONTIER_OUT = 6;
+    private static final int CACHE_HITS = 7;
+    private static final int CACHE_MISSES = 8;
+    private static final int CACHE_EVICTIONS = 9;
+    private static final int PERMUTATION_NODES = 10;
+    private static final int EXPAND_TIME = 11;
+    private static final int MERGE_TIME = 12;
+    private static final int PRUNE_TIME = 13;
+    private static final int SELECT_TIME = 14;
+    private static final int TOTAL_TIME = 15;
+    private static final int ALLOCATED_BYTES = 16;
+
+    private final SimulationContext context;
+    private final Format format;
+    private final boolean stream; //whether every day is written as soon as it ends
+    private final PrintWriter writer;
+    private final ArrayList<long[]> days; //the values of every day that has not been written yet, in the order of COLUMNS
+
+    //the current day
+    private long[] values;
+    private long dayStart;
+    private long phaseStart;
+    private long cacheHits;
+    private long cacheMisses;
+    private long cacheEvictions;
+    private long permutationNodes;
+    private long allocatedBytes;
+
+    /**
+     * @param context The simulation to record
+     * @param fileName The file to write the metrics to
+     * @param format The layout of the metrics
+     * @param stream Whether every day is written as soon as it ends, or all days when the metrics are closed
+     * @throws IOException If the file cannot be created or written to
+     */
+    public SolverMetrics(SimulationContext context, String fileName, Format format, boolean stream) throws IOException
+    {
+        this.context = context;
+        this.format = format;
+        this.stream = stream;
+        this.writer = new PrintWriter(new BufferedWriter(new FileWriter(fileName)));
+        this.days = new ArrayList<>();
+
+        if (format == Format.CSV)
+        {
+            writer.println(String.join(",", COLUMNS));
+        }
+    }
+
+    /**
+     * Starts recording a day.
+     *
+     * @param day The day of the season
+     * @param frontierIn The number of farms at the beginning of the day
+     */
+    public void beginDay(int day, long frontierIn)
+    {
+        values = new long[COLUMNS.length];
+        values[DAY] = day;
+        values[FRONTIER_IN] = frontierIn;
+
+        PermutationCache cache = context.getPermutationCache();
+        cacheHits = cache.getHits();
+        cacheMisses = cache.getMisses();
+        cacheEvictions = cache.getEvictions();
+        permutationNodes = context.getNumPermutationNodes();
+        allocatedBytes = getAllocatedBytes();
+
+        dayStart = System.nanoTime();
+        phaseStart = dayStart;
+    }
+
+    //records the end of simulating every farm, which created the given number of farms before any were merged
+    public void endExpansion(long numPermutations)
+    {
+        values[PERMUTATIONS] = numPermutations;
+        values[EXPAND_TIME] = endPhase();
+    }
+
+    //records the end of merging identical farms
+    public void endMerge(long numMerged)
+    {
+        values[MERGED] = numMerged;
+        values[MERGE_TIME] = endPhase();
+    }
+
+    //records the end of removing the farms that cannot become the most profitable farm
+    public void endPrune(long numPruned)
+    {
+        values[PRUNED] = numPruned;
+        values[PRUNE_TIME] = endPhase();
+    }
+
+    //records the end of limiting the farms carried over to the next day
+    public void endSelection(long numDiscarded)
+    {
+        values[DISCARDED] = numDiscarded;
+        values[SELECT_TIME] = endPhase();
+    }
+
+    /**
+     * Finishes recording the current day.
+     *
+     * @param frontierOut The number of farms carried over to the next day
+     */
+    public void endDay(long frontierOut)
+    {
+        PermutationCache cache = context.getPermutationCache();
+        values[FRONTIER_OUT] = frontierOut;
+        values[CACHE_HITS] = cache.getHits() - cacheHits;
+        values[CACHE_MISSES] = cache.getMisses() - cacheMisses;
+        values[CACHE_EVICTIONS] = cache.getEvictions() - cacheEvictions;
+        values[PERMUTATION_NODES] = context.getNumPermutationNodes() - permutationNodes;
+        values[TOTAL_TIME] = System.nanoTime() - dayStart;
+
+        long allocated = getAllocatedBytes();
+        values[ALLOCATED_BYTES] = allocated < 0 || allocatedBytes < 0 ? -1 : allocated - allocatedBytes;
+
+        days.add(values);
+        if (stream)
+        {
+            writeDays();
+            writer.flush();
+        }
+    }
+
+    /**
+     * Writes the days that have not been written yet and closes the file.
+     *
+     * @throws IOException If any part of the metrics could not be written
+     */
+    public void close() throws IOException
+    {
+        writeDays();
+        writer.close();
+        if (writer.checkError())
+        {
+            throw new IOException("Unable to write the solver metrics");
+        }
+    }
+
+    //returns the nanoseconds since the last phase ended
+    private long endPhase()
+    {
+        long now = System.nanoTime();
+        long time = now - phaseStart;
+        phaseStart = now;
+        return time;
+    }
+
+    private void writeDays()
+    {
+        for (long[] day : days)
+        {
+            StringBuilder line = new StringBuilder(format == Format.JSON ? "{" : "");
+            for (int i = 0; i < COLUMNS.length; i++)
+            {
+                if (i > 0)
+                {
+                    line.append(',');
+                }
+                if (format == Format.JSON)
+                {
+                    line.append('"').append(COLUMNS[i]).append("\":");
+                }
+
+                //times are recorded in nanoseconds but written in milliseconds
+                if (COLUMNS[i].endsWith("_ms"))
+                {
+                    line.append(String.format(Locale.ROOT, "%.3f", day[i]/1000000.0));
+                }
+                else
+                {
+                    line.append(day[i]);
+                }
+            }
+            writer.println(format == Format.JSON ? line.append('}') : line);
+        }
+        days.clear();
+    }
+
+    /**
+     * Returns the bytes allocated so far by the calling thread, along with the bytes
+     * allocated by every task simulating farms for it, even on threads that ended since.
+     * Returns -1 if the JVM does not keep track of them.
+     */
+    private long getAllocatedBytes()
+    {
+        long allocated = getCurrentThreadAllocatedBytes();
+        return allocated < 0 ? -1 : allocated + context.getAllocatedBytes();
+    }
+
+    //returns the bytes allocated by the calling thread so far, or -1 if the JVM does not keep track of them
+    public static long getCurrentThreadAllocatedBytes()
+    {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean))
+        {
+            return -1;
+        }
+
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        if (!allocations.isThreadAllocatedMemorySupported() || !allocations.isThreadAllocatedMemoryEnabled())
+        {
+            return -1;
+        }
+        return allocations.getCurrentThreadAllocatedBytes();
+    }
+
+    //returns the usual file name for metrics of the given layout
+    public static String getFileName(Format format)
+    {
+        return format == Format.JSON ? "metrics.jsonl" : "metrics.csv";
+    }
+}
@@ -0,0 +1,19 @@
+//the types of sprinklers, which water the tiles around them every morning
+public enum Sprinkler
+{
+    BASIC   (4),
+    QUALITY (8),
+    IRIDIUM (24);
+
+    private final int numTiles; //the number of tiles watered by a single sprinkler
+
+    private Sprinkler(int numTiles)
+    {
+        this.numTiles = numTiles;
+    }
+
+    public int getNumTiles()
+    {
+        return numTiles;
+    }
+}
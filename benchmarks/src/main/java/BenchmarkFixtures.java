@@ -0,0 +1,116 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.function.Supplier;
+
+/**
+ * This class sets up the work measured by the benchmarks.
+ *
+ * The calculator lives in the default package, which classes in a named
+ * package cannot refer to, and JMH only runs benchmarks in a named package.
+ * So the benchmarks load this class by name and only ever see the work it
+ * sets up as a Supplier.
+ */
+public class BenchmarkFixtures
+{
+    private static final long MAX_CACHED_PERMUTATIONS = 2000000; //the calculator's default, so that long runs do not outgrow the heap
+
+    /**
+     * Calculates every way an empty farm on the first day of summer can spend its gold.
+     *
+     * @param gold The gold the farm has
+     * @param tiles The number of tiles the player can water a day
+     */
+    public static Supplier<Object> permutations(int gold, int tiles)
+    {
+        SimulationContext context = createContext(1, new Energy(tiles));
+
+        ArrayList<Crop> validCrops = new ArrayList<>();
+        for (Crop cropType : context.getCropTypes())
+        {
+            if (gold >= cropType.getBuyPrice())
+            {
+                validCrops.add(cropType);
+            }
+        }
+        int purchasingGold = gold - (gold % context.getGoldUnit());
+
+        return () -> FarmPermutation.calculate(context, validCrops, 0, purchasingGold);
+    }
+
+    /**
+     * Simulates a single day of a farm. The permutations of the farm are
+     * cached after the first call, as they would be for most farms.
+     *
+     * @param state "start" for an empty farm on the first day of summer,
+     *              "midSeason" for a farm with crops on the tenth day
+     * @param gold The gold the farm starts the season with
+     */
+    public static Supplier<Object> simulateDay(String state, int gold)
+    {
+        SimulationContext context = createContext(1, new Energy(0, Level.COPPER, 0));
+        Farm farm = new Farm(context, null, gold, 0, null);
+
+        if (state.equals("midSeason"))
+        {
+            //follow one of the permutations of every day until the tenth day
+            for (int day = 1; day < 10; day++)
+            {
+                ArrayList<Farm> farms = farm.simulateDay();
+                farm = farms.get(farms.size()/2);
+                context.update();
+            }
+        }
+        else if (!state.equals("start"))
+        {
+            throw new IllegalArgumentException("Unknown farm state: " + state);
+        }
+
+        Farm startingFarm = farm;
+        return () -> new Farm(context,
+                              startingFarm.getCrops().clone(),
+                              startingFarm.getGold(),
+                              startingFarm.getGoldCache(),
+                              startingFarm.getHistory()).simulateDay();
+    }
+
+    /**
+     * Finds the most profitable farms from the given day until the end of summer.
+     *
+     * @param day The day the season is solved from
+     * @param gold The gold the player starts with
+     * @param maxFrontierSize The most farms carried over to the next day, 0 for no limit.
+     *                        Exact runs only finish from late days, see CropCalculator
+     */
+    public static Supplier<Object> solve(int day, int gold, int maxFrontierSize)
+    {
+        return () ->
+        {
+            SimulationContext context = createContext(day, new Energy(0, Level.COPPER, 0));
+            FarmBeam beam = new FarmBeam(context, maxFrontierSize, 0, FarmBeam.EXPECTED_VALUE);
+            FarmExpansion expansion = new FarmExpansion(1);
+            FarmRanking ranking = new FarmRanking(100);
+
+            //the progress of every day is not part of the measurement
+            PrintStream out = System.out;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            try
+            {
+                return CropCalculator.simulate(context, gold, expansion, beam, false, ranking, null);
+            }
+            finally
+            {
+                System.setOut(out);
+                expansion.shutdown();
+            }
+        };
+    }
+
+    private static SimulationContext createContext(int day, Energy energy)
+    {
+        return new SimulationContext(CropCalculator.getCrops(CropCalculator.SEASON.SUMMER),
+                                     CropCalculator.DAYS_IN_A_SEASON - day + 1,
+                                     energy,
+                                     MAX_CACHED_PERMUTATIONS);
+    }
+}
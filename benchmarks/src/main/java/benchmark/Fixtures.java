@@ -0,0 +1,34 @@
+package benchmark;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.function.Supplier;
+
+/**
+ * Loads the work set up by BenchmarkFixtures, which lives in the default
+ * package alongside the calculator and can only be reached by name.
+ */
+final class Fixtures
+{
+    private Fixtures()
+    {
+    }
+
+    @SuppressWarnings("unchecked")
+    static Supplier<Object> load(String name, Class<?>[] parameterTypes, Object... arguments)
+    {
+        try
+        {
+            Method fixture = Class.forName("BenchmarkFixtures").getMethod(name, parameterTypes);
+            return (Supplier<Object>) fixture.invoke(null, arguments);
+        }
+        catch (InvocationTargetException e)
+        {
+            throw new IllegalStateException("Unable to set up the benchmark " + name, e.getCause());
+        }
+        catch (ReflectiveOperationException e)
+        {
+            throw new IllegalStateException("Unable to find the benchmark fixture " + name, e);
+        }
+    }
+}
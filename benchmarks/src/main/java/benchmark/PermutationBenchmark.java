@@ -0,0 +1,49 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures FarmPermutation.calculate for an empty farm across a grid
+ * of gold and the number of tiles the player can water a day.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PermutationBenchmark
+{
+    @Param({"100", "500", "1000", "2500"})
+    public int gold;
+
+    @Param({"20", "60", "150"})
+    public int tiles;
+
+    private Supplier<Object> permutations;
+
+    @Setup
+    public void setUp()
+    {
+        permutations = Fixtures.load("permutations", new Class<?>[] {int.class, int.class}, gold, tiles);
+    }
+
+    @Benchmark
+    public Object calculate()
+    {
+        return permutations.get();
+    }
+}
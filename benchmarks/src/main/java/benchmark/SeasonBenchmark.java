@@ -0,0 +1,52 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures solving the rest of summer from several start days, from setting
+ * up the simulation to ranking the most profitable farms, on a single thread.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SeasonBenchmark
+{
+    @Param({"8", "12", "16", "20"})
+    public int day;
+
+    @Param({"100"})
+    public int gold;
+
+    @Param({"10000"})
+    public int maxFrontierSize; //0 for no limit, which runs out of memory from early start days
+
+    private Supplier<Object> solve;
+
+    @Setup
+    public void setUp()
+    {
+        solve = Fixtures.load("solve", new Class<?>[] {int.class, int.class, int.class}, day, gold, maxFrontierSize);
+    }
+
+    @Benchmark
+    public Object solve()
+    {
+        return solve.get();
+    }
+}
@@ -0,0 +1,50 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures a single call to Farm.simulateDay, which advances, harvests and
+ * invests one farm, on representative farms. The permutations of the farm
+ * come from the memoization cache, as they do for most farms.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SimulateDayBenchmark
+{
+    @Param({"start", "midSeason"})
+    public String state;
+
+    @Param({"100", "500"})
+    public int gold;
+
+    private Supplier<Object> simulateDay;
+
+    @Setup
+    public void setUp()
+    {
+        simulateDay = Fixtures.load("simulateDay", new Class<?>[] {String.class, int.class}, state, gold);
+    }
+
+    @Benchmark
+    public Object simulateDay()
+    {
+        return simulateDay.get();
+    }
+}